@@ -0,0 +1 @@
+java -cp target/benchmark.jar org.jmhplayground.infra.DeadCodeChecker -perfnorm org.jmhplayground.jmh1.*
\ No newline at end of file
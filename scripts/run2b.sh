@@ -0,0 +1 @@
+java -cp target/benchmark.jar org.jmhplayground.infra.BlackholeCalibration calibrate && java -cp target/benchmark.jar org.jmhplayground.infra.BlackholeCalibration subtract org.jmhplayground.jmh6.BranchPrediction.*
\ No newline at end of file
@@ -0,0 +1 @@
+java -cp target/benchmark.jar org.jmhplayground.infra.JvmFlagMatrix -XX:MaxInlineLevel=4,9,15 -XX:FreqInlineSize=100,325 -XX:InlineSmallCode=1000,2500 -jit c2,c1,graal -f 1 org.jmhplayground.jmh5.Inlining.isUppercase
\ No newline at end of file
@@ -0,0 +1 @@
+java -jar target/benchmark.jar -prof "async:output=flamegraph;dir=/tmp;libPath=$HOME/async-profiler-3.0-linux-x64/lib/libasyncProfiler.so;rawCommand=cstack=vm" org.jmhplayground.jmh5.RecursionStrategies.*
\ No newline at end of file
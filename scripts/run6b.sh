@@ -0,0 +1 @@
+java -jar target/benchmark.jar -rf json -prof perfnorm org.jmhplayground.jmh6.BranchlessKernels.*
\ No newline at end of file
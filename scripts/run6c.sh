@@ -0,0 +1 @@
+java -jar target/benchmark.jar -rf json -prof org.jmhplayground.infra.PerfCountersProfiler -prof perfnorm org.jmhplayground.jmh6.CountedRegions.*
\ No newline at end of file
@@ -0,0 +1,2 @@
+java -cp target/benchmark.jar org.jmhplayground.infra.AdaptiveWarmup -w 100ms org.jmhplayground.jmh6.BranchPrediction.*
+java -cp target/benchmark.jar org.jmhplayground.infra.SuiteScheduler -cores 4 -warmup target/adaptive-warmup.properties org.jmhplayground.jmh6.BranchPrediction.*
\ No newline at end of file
@@ -0,0 +1 @@
+java -jar target/benchmark.jar -jvmArgsAppend "-Xmx24M -XX:SoftRefLRUPolicyMSPerMB=1" -prof gc -prof org.jmhplayground.infra.AllocationSiteProfiler org.jmhplayground.extra.JacksonParser.*
\ No newline at end of file
@@ -0,0 +1,4 @@
+# the detector only inspects the @Group benchmarks, each method in threads of its own: -t N ones are skipped
+# FalseSharing.PackedIndices is packed on purpose: it must be flagged, and doesn't fail the run
+java -XX:-RestrictContended -cp target/benchmark.jar org.jmhplayground.infra.FalseSharingDetector -expect 'FalseSharing\$PackedIndices' "org.jmhplayground.*"
+java -jar target/benchmark.jar -rf json -prof perfnorm org.jmhplayground.extra.FalseSharing
\ No newline at end of file
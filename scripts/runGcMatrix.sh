@@ -0,0 +1 @@
+java -cp target/benchmark.jar org.jmhplayground.infra.GcMatrix -XX:MaxHeapSize=32m -f 1 org.jmhplayground.extra.JacksonParser.parseJson
\ No newline at end of file
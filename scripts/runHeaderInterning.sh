@@ -0,0 +1 @@
+for t in 1 4 16; do java -jar target/benchmark.jar -rf json -rff header-interning-$t.json -t $t -prof gc org.jmhplayground.extra.HeaderInterning; done
\ No newline at end of file
@@ -0,0 +1 @@
+java -jar target/benchmark.jar -pqType=LINKED_BLOCKING_QUEUE -pqCapacity=32768 -pdelayProducer=0 -pdelayConsumer=0 -pbackoff=NONE -prof org.jmhplayground.infra.JfrSummaryProfiler org.jmhplayground.extra.QueueThroughputWithBackoff.telemetry
\ No newline at end of file
@@ -0,0 +1 @@
+for t in 1 2 4 8 16 32 64; do java -jar target/benchmark.jar -rf json -rff metrics-counters-$t.json -t $t "org.jmhplayground.extra.MetricsCounters.(increment|sum)$"; done
\ No newline at end of file
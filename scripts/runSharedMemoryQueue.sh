@@ -0,0 +1 @@
+java -jar target/benchmark.jar -rf json -prof gc org.jmhplayground.extra.SharedMemoryQueue
\ No newline at end of file
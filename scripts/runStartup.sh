@@ -0,0 +1 @@
+java -cp target/benchmark.jar org.jmhplayground.infra.StartupRunner -p morphism=MEGA -p job=0 "org.jmhplayground.(extra.JacksonParser.parseJson|jmh4.TypeProfilePollution.testPredicates)"
\ No newline at end of file
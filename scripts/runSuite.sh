@@ -0,0 +1,3 @@
+# run infra.AdaptiveWarmup on the suite first to replace the fixed warmup of the annotations with the one it finds
+if [ -f target/adaptive-warmup.properties ]; then WARMUP="-warmup target/adaptive-warmup.properties"; fi
+java -cp target/benchmark.jar org.jmhplayground.infra.SuiteScheduler -cores 4 $WARMUP "org.jmhplayground.jmh[1-6].*"
\ No newline at end of file
@@ -0,0 +1,146 @@
+package org.jmhplayground.extra;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * A single producer single consumer ring buffer of longs laid out in a memory mapped file, so that the producer and
+ * the consumer can be in different processes: each one opens its own instance on the same file.
+ *
+ * <pre>
+ *   0  head      written by the consumer, read by the producer
+ *   8  capacity  written once, on creation
+ * 128  tail      written by the producer, read by the consumer
+ * 256  closed    written by the producer when done
+ * 384  the elements
+ * </pre>
+ *
+ * The indices are 128 bytes apart, not to share (adjacent) cache lines, and are published with release stores and
+ * read with acquire loads (through a MemorySegment VarHandle), which is enough to hand off the plain written elements
+ * across processes as well, since they share the same physical memory. Each side caches the last seen index of the
+ * other one, and reads it again only when the ring looks full (or empty).
+ *
+ * java.lang.foreign is a preview API in Java 21: the JVMs using this need --enable-preview.
+ */
+public final class MappedRingBuffer implements AutoCloseable {
+
+    public static final long EMPTY = Long.MIN_VALUE;
+
+    private static final long HEAD = 0;
+    private static final long CAPACITY = 8;
+    private static final long TAIL = 128;
+    private static final long CLOSED = 256;
+    private static final long ELEMENTS = 384;
+
+    private static final VarHandle LONG = MethodHandles.memorySegmentViewVarHandle(JAVA_LONG);
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final long mask;
+    private final long capacity;
+
+    // the index owned by this side and the last seen index of the other side
+    private long head;
+    private long tail;
+
+    private MappedRingBuffer(Path file, int capacity, boolean create) {
+        this.arena = Arena.ofShared();
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = create ? ELEMENTS + 8L * capacity : channel.size();
+            // the mapping stays valid after closing the channel, until the arena is closed
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+        } catch (IOException e) {
+            arena.close();
+            throw new UncheckedIOException(e);
+        }
+        if (create) {
+            // a new file is zero filled: only the capacity needs to be written
+            LONG.setRelease(segment, CAPACITY, (long) capacity);
+        }
+        this.capacity = (long) LONG.getAcquire(segment, CAPACITY);
+        this.mask = this.capacity - 1;
+        this.head = (long) LONG.getAcquire(segment, HEAD);
+        this.tail = (long) LONG.getAcquire(segment, TAIL);
+    }
+
+    /**
+     * Creates the file of a ring buffer of the given capacity, a power of 2, replacing the existing one
+     */
+    public static MappedRingBuffer create(Path file, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of 2, not " + capacity);
+        }
+        return new MappedRingBuffer(file, capacity, true);
+    }
+
+    /**
+     * Opens the ring buffer of an existing file, created by {@link #create(Path, int)}
+     */
+    public static MappedRingBuffer open(Path file) {
+        return new MappedRingBuffer(file, 0, false);
+    }
+
+    /**
+     * Producer side only
+     */
+    public boolean offer(long value) {
+        long tail = this.tail;
+        if (tail - head == capacity) {
+            head = (long) LONG.getAcquire(segment, HEAD);
+            if (tail - head == capacity) {
+                return false;
+            }
+        }
+        segment.set(JAVA_LONG, ELEMENTS + 8 * (tail & mask), value);
+        LONG.setRelease(segment, TAIL, tail + 1);
+        this.tail = tail + 1;
+        return true;
+    }
+
+    /**
+     * Consumer side only: the oldest element, or {@link #EMPTY}
+     */
+    public long poll() {
+        long head = this.head;
+        if (head == tail) {
+            tail = (long) LONG.getAcquire(segment, TAIL);
+            if (head == tail) {
+                return EMPTY;
+            }
+        }
+        long value = segment.get(JAVA_LONG, ELEMENTS + 8 * (head & mask));
+        LONG.setRelease(segment, HEAD, head + 1);
+        this.head = head + 1;
+        return value;
+    }
+
+    /**
+     * Producer side: no more elements will be offered
+     */
+    public void markClosed() {
+        LONG.setRelease(segment, CLOSED, 1L);
+    }
+
+    /**
+     * Consumer side: whether the producer is done, the elements already offered can still be polled
+     */
+    public boolean isClosed() {
+        return (long) LONG.getAcquire(segment, CLOSED) != 0;
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
@@ -0,0 +1,189 @@
+package org.jmhplayground.extra;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+
+import org.jmhplayground.infra.Benchmarks;
+
+/**
+ * The other end of the queues of {@link SharedMemoryQueue}, either a thread of the benchmark JVM or a JVM of its own:
+ * - DRAIN polls everything offered by the benchmark
+ * - ECHO offers back everything offered by the benchmark, on a second queue
+ * until the benchmark closes its queue, or its JVM is gone without closing it (a crash, a JMH timeout, a kill): the
+ * peer JVM would otherwise keep spinning on a core forever.
+ */
+public final class SharedMemoryPeer {
+
+    /**
+     * The empty polls (or full offers) between two checks of the owner JVM, a few milliseconds of spinning
+     */
+    private static final int OWNER_CHECK_SPINS = 1 << 16;
+
+    public enum Role {
+        DRAIN, ECHO
+    }
+
+    /**
+     * The common interface of the in-process and of the mapped queues
+     */
+    public interface Channel extends AutoCloseable {
+
+        boolean offer(long value);
+
+        /**
+         * The oldest element, or {@link MappedRingBuffer#EMPTY}
+         */
+        long poll();
+
+        void markClosed();
+
+        boolean isClosed();
+
+        @Override
+        void close();
+    }
+
+    private SharedMemoryPeer() {
+    }
+
+    public static Channel mapped(MappedRingBuffer ring) {
+        return new Channel() {
+            @Override
+            public boolean offer(long value) {
+                return ring.offer(value);
+            }
+
+            @Override
+            public long poll() {
+                return ring.poll();
+            }
+
+            @Override
+            public void markClosed() {
+                ring.markClosed();
+            }
+
+            @Override
+            public boolean isClosed() {
+                return ring.isClosed();
+            }
+
+            @Override
+            public void close() {
+                ring.close();
+            }
+        };
+    }
+
+    public static Channel queue(Queue<Long> queue) {
+        return new Channel() {
+            private volatile boolean closed;
+
+            @Override
+            public boolean offer(long value) {
+                return queue.offer(value);
+            }
+
+            @Override
+            public long poll() {
+                Long value = queue.poll();
+                return value == null ? MappedRingBuffer.EMPTY : value;
+            }
+
+            @Override
+            public void markClosed() {
+                closed = true;
+            }
+
+            @Override
+            public boolean isClosed() {
+                return closed;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Consumes in, echoing to out if the role is ECHO, until in is closed and empty
+     */
+    public static void run(Role role, Channel in, Channel out) {
+        run(role, in, out, ProcessHandle.current());
+    }
+
+    /**
+     * Consumes in, echoing to out if the role is ECHO, until in is closed and empty or the owner process is gone
+     */
+    public static void run(Role role, Channel in, Channel out, ProcessHandle owner) {
+        int spins = 0;
+        while (true) {
+            long value = in.poll();
+            if (value == MappedRingBuffer.EMPTY) {
+                if (in.isClosed() || (++spins % OWNER_CHECK_SPINS == 0 && isGone(owner))) {
+                    return;
+                }
+                Thread.onSpinWait();
+            } else if (role == Role.ECHO) {
+                while (!out.offer(value)) {
+                    if (++spins % OWNER_CHECK_SPINS == 0 && isGone(owner)) {
+                        return;
+                    }
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+
+    private static boolean isGone(ProcessHandle owner) {
+        if (owner.isAlive()) {
+            return false;
+        }
+        System.err.println("SharedMemoryPeer: the benchmark JVM " + owner.pid() + " is gone without closing the queue");
+        return true;
+    }
+
+    /**
+     * Starts a JVM running the given role on the ring buffers of the files, already created, until this JVM is gone
+     */
+    public static Process start(Role role, Path in, Path out) {
+        try {
+            return new ProcessBuilder(List.of(Benchmarks.java(), "--enable-preview", "-cp", System.getProperty("java.class.path"),
+                    SharedMemoryPeer.class.getName(), role.name(), in.toString(), out.toString(),
+                    Long.toString(ProcessHandle.current().pid())))
+                    .inheritIO()
+                    .start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The directory of the ring buffer files: a tmpfs where available, so that nothing is ever written to disk
+     */
+    public static Path directory() {
+        Path shm = Path.of("/dev/shm");
+        return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            System.err.println("Usage: SharedMemoryPeer DRAIN|ECHO <in ring file> <out ring file> <owner pid>");
+            System.exit(2);
+        }
+        // an owner already gone has no handle: nothing to run for
+        ProcessHandle owner = ProcessHandle.of(Long.parseLong(args[3])).orElse(null);
+        if (owner == null) {
+            return;
+        }
+        try (Channel in = mapped(MappedRingBuffer.open(Path.of(args[1])));
+             Channel out = mapped(MappedRingBuffer.open(Path.of(args[2])))) {
+            run(Role.valueOf(args[0]), in, out, owner);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.jmhplayground.extra;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.jmhplayground.extra.QueueThroughputWithBackoff.QueueFactories;
+import org.jmhplayground.extra.SharedMemoryPeer.Channel;
+import org.jmhplayground.extra.SharedMemoryPeer.Role;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Splitting a pipeline in processes on the same host doesn't have to mean sockets: a {@link MappedRingBuffer} in
+ * shared memory hands off the elements as an in-process queue does. This benchmark compares, with the peer
+ * ({@link SharedMemoryPeer}) in a thread of the benchmark JVM or in a JVM of its own:
+ * - offer: the throughput of a producer, with the peer draining the queue (offersMade and fullQueue as in
+ *   {@link QueueThroughputWithBackoff})
+ * - roundTrip: the latency of offering an element and polling it back, with the peer echoing it on a second queue
+ * for transport
+ * - CONCURRENT_LINKED_QUEUE, LINKED_BLOCKING_QUEUE, ARRAY_BLOCKING_QUEUE: the in-process baselines, the queues of
+ *   {@link QueueThroughputWithBackoff} and a peer thread (the ConcurrentLinkedQueue is unbounded, it's never full)
+ * - MAPPED_THREAD: the mapped ring buffer and a peer thread
+ * - MAPPED_PROCESS: the mapped ring buffer and a peer JVM
+ * Both ends spin while waiting, so each needs a core of its own: with fewer cores the numbers are the ones of
+ * the scheduler time slices. A roundTrip waiting for a peer that is gone, or interrupted by the JMH timeout, fails
+ * the iteration instead of spinning forever.
+ *
+ * Run with
+ * -prof gc org.jmhplayground.extra.SharedMemoryQueue
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+public class SharedMemoryQueue {
+
+    /**
+     * The spins waiting for the peer between two checks of the peer and of the interrupt, a few microseconds
+     */
+    private static final int PEER_CHECK_SPINS = 1 << 10;
+
+    public enum Transport {
+        CONCURRENT_LINKED_QUEUE(QueueFactories.CONCURRENT_LINKED_QUEUE),
+        LINKED_BLOCKING_QUEUE(QueueFactories.LINKED_BLOCKING_QUEUE),
+        ARRAY_BLOCKING_QUEUE(QueueFactories.ARRAY_BLOCKING_QUEUE),
+        MAPPED_THREAD(null),
+        MAPPED_PROCESS(null);
+
+        /**
+         * The factory of the in-process queue, null for the mapped ring buffers
+         */
+        final QueueFactories inProcess;
+
+        Transport(QueueFactories inProcess) {
+            this.inProcess = inProcess;
+        }
+
+        /**
+         * A new in-process queue: the factories are shared with {@link QueueThroughputWithBackoff}, which uses raw types
+         */
+        @SuppressWarnings("unchecked")
+        Queue<Long> newQueue(int capacity) {
+            return (Queue<Long>) inProcess.apply(capacity);
+        }
+    }
+
+    @Param
+    Transport transport;
+
+    @Param({ "1024" })
+    int capacity;
+
+    private Channel ping;
+    private Channel pong;
+    private Path pingFile;
+    private Path pongFile;
+    private Thread peerThread;
+    private Process peerProcess;
+    private long sequence;
+
+    @Setup
+    public void startPeer(BenchmarkParams params) throws IOException {
+        Role role = params.getBenchmark().endsWith("roundTrip") ? Role.ECHO : Role.DRAIN;
+        if (transport.inProcess != null) {
+            ping = SharedMemoryPeer.queue(transport.newQueue(capacity));
+            pong = SharedMemoryPeer.queue(transport.newQueue(capacity));
+            startThread(() -> SharedMemoryPeer.run(role, ping, pong));
+            return;
+        }
+        pingFile = Files.createTempFile(SharedMemoryPeer.directory(), "ping", ".ring");
+        pongFile = Files.createTempFile(SharedMemoryPeer.directory(), "pong", ".ring");
+        ping = SharedMemoryPeer.mapped(MappedRingBuffer.create(pingFile, capacity));
+        pong = SharedMemoryPeer.mapped(MappedRingBuffer.create(pongFile, capacity));
+        if (transport == Transport.MAPPED_PROCESS) {
+            peerProcess = SharedMemoryPeer.start(role, pingFile, pongFile);
+        } else {
+            // the peer needs ends of its own: each one caches the index of the other end
+            startThread(() -> {
+                try (Channel in = SharedMemoryPeer.mapped(MappedRingBuffer.open(pingFile));
+                     Channel out = SharedMemoryPeer.mapped(MappedRingBuffer.open(pongFile))) {
+                    SharedMemoryPeer.run(role, in, out);
+                }
+            });
+        }
+    }
+
+    private void startThread(Runnable peer) {
+        peerThread = new Thread(peer, "peer");
+        peerThread.setDaemon(true);
+        peerThread.start();
+    }
+
+    @TearDown
+    public void stopPeer() throws Exception {
+        ping.markClosed();
+        if (peerThread != null) {
+            peerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (peerProcess != null && !peerProcess.waitFor(10, TimeUnit.SECONDS)) {
+            peerProcess.destroyForcibly();
+        }
+        ping.close();
+        pong.close();
+        if (pingFile != null) {
+            Files.deleteIfExists(pingFile);
+            Files.deleteIfExists(pongFile);
+        }
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class OfferCounters {
+        public long fullQueue;
+        public long offersMade;
+    }
+
+    @Benchmark
+    public boolean offer(OfferCounters counters) {
+        boolean fullQueue = !ping.offer(++sequence);
+        if (fullQueue) {
+            sequence--;
+            counters.fullQueue++;
+        } else {
+            counters.offersMade++;
+        }
+        return fullQueue;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long roundTrip() {
+        long value = ++sequence;
+        int spins = 0;
+        while (!ping.offer(value)) {
+            spins = awaitPeer(spins);
+        }
+        long echoed;
+        while ((echoed = pong.poll()) == MappedRingBuffer.EMPTY) {
+            spins = awaitPeer(spins);
+        }
+        return echoed;
+    }
+
+    private int awaitPeer(int spins) {
+        if (++spins % PEER_CHECK_SPINS == 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("Interrupted waiting for the peer, after " + spins + " spins");
+            }
+            if ((peerThread != null && !peerThread.isAlive()) || (peerProcess != null && !peerProcess.isAlive())) {
+                throw new IllegalStateException("The peer is gone, after " + spins + " spins waiting for it");
+            }
+        }
+        Thread.onSpinWait();
+        return spins;
+    }
+}
@@ -0,0 +1,290 @@
+package org.jmhplayground.infra;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * -prof perfnorm counts the whole fork, harness and JIT threads included, and divides by the ops: fine for
+ * comparisons, but not an exact count of what a single op costs. These are per-thread counters opened through
+ * perf_event_open (called with the FFM API, a preview in Java 21) and read around only the measured code:
+ *
+ * <pre>
+ * counters.start();
+ * // measured code
+ * counters.stop();
+ * </pre>
+ *
+ * Each region adds what the counters count between start and stop to the totals of its events
+ * ({@link PerfCountersTotals}), net of the cost of reading the counters themselves (calibrated when opened), and
+ * {@link PerfCountersProfiler} reports them per region as secondary results. Only the user space is counted (which
+ * is also what perf_event_paranoid=2 allows).
+ * When the hardware counters aren't available (a VM, or a container without perf events) this falls back to the
+ * software task-clock and then, when perf_event_open isn't allowed at all, to the thread CPU time of the JVM.
+ * Neither can resolve a short region: their count is mostly the one of the read syscalls around it, so no overhead
+ * is subtracted and they're only reported as totals per iteration, reads included, not per region.
+ *
+ * The counters count the thread which opened them: open them in the @Setup of a Scope.Thread state, and run the
+ * forks with --enable-preview and --enable-native-access=ALL-UNNAMED (the downcalls are restricted methods, which
+ * print a warning otherwise).
+ */
+public final class PerfCounters implements AutoCloseable {
+
+    public enum Source {
+        HARDWARE, SOFTWARE, THREAD_CPU_TIME
+    }
+
+    private record Event(String name, int type, long config) {
+    }
+
+    private static final int PERF_TYPE_HARDWARE = 0;
+    private static final int PERF_TYPE_SOFTWARE = 1;
+    private static final int PERF_TYPE_HW_CACHE = 3;
+
+    /**
+     * cache id | (op id << 8) | (result id << 16), with op read = 0 and result miss = 1
+     */
+    private static final long L1D_READ_MISS = 0 | (1 << 16);
+    private static final long LL_READ_MISS = 2 | (1 << 16);
+
+    private static final List<Event> HARDWARE_EVENTS = List.of(
+            new Event("cycles", PERF_TYPE_HARDWARE, 0),
+            new Event("instructions", PERF_TYPE_HARDWARE, 1),
+            new Event("branch-misses", PERF_TYPE_HARDWARE, 5),
+            new Event("L1-dcache-load-misses", PERF_TYPE_HW_CACHE, L1D_READ_MISS),
+            new Event("LLC-load-misses", PERF_TYPE_HW_CACHE, LL_READ_MISS));
+
+    private static final Event TASK_CLOCK = new Event("task-clock", PERF_TYPE_SOFTWARE, 1);
+
+    private static final String THREAD_CPU_TIME = "cpu-time";
+
+    /**
+     * The size of perf_event_attr up to PERF_ATTR_SIZE_VER7, and its fields used here
+     */
+    private static final int ATTR_SIZE = 128;
+    private static final long ATTR_TYPE = 0;
+    private static final long ATTR_SIZE_FIELD = 4;
+    private static final long ATTR_CONFIG = 8;
+    private static final long ATTR_READ_FORMAT = 32;
+    private static final long ATTR_FLAGS = 40;
+
+    private static final long EXCLUDE_KERNEL = 1 << 5;
+    private static final long EXCLUDE_HV = 1 << 6;
+
+    /**
+     * Read all the counters of the group at once, with the times to scale them when the PMU is multiplexed:
+     * { nr, time_enabled, time_running, value[nr] }
+     */
+    private static final long PERF_FORMAT_TOTAL_TIME_ENABLED = 1;
+    private static final long PERF_FORMAT_TOTAL_TIME_RUNNING = 2;
+    private static final long PERF_FORMAT_GROUP = 8;
+    private static final long READ_FORMAT = PERF_FORMAT_GROUP | PERF_FORMAT_TOTAL_TIME_ENABLED | PERF_FORMAT_TOTAL_TIME_RUNNING;
+
+    private static final int CALIBRATION_ROUNDS = 1000;
+
+    private static final long SYS_PERF_EVENT_OPEN = switch (System.getProperty("os.arch")) {
+        case "amd64", "x86_64" -> 298;
+        case "aarch64" -> 241;
+        default -> -1;
+    };
+
+    private static final MethodHandle SYSCALL;
+    private static final MethodHandle READ;
+    private static final MethodHandle CLOSE;
+    private static final StructLayout CALL_STATE = Linker.Option.captureStateLayout();
+    private static final VarHandle ERRNO = CALL_STATE.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+    static {
+        MethodHandle syscall = null;
+        MethodHandle read = null;
+        MethodHandle close = null;
+        if (SYS_PERF_EVENT_OPEN > 0 && System.getProperty("os.name").equals("Linux")) {
+            Linker linker = Linker.nativeLinker();
+            var libc = linker.defaultLookup();
+            // long syscall(long number, ...): the variadic arguments are all passed as longs
+            syscall = linker.downcallHandle(libc.find("syscall").orElseThrow(),
+                    FunctionDescriptor.of(JAVA_LONG, JAVA_LONG, ADDRESS, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG),
+                    Linker.Option.firstVariadicArg(1), Linker.Option.captureCallState("errno"));
+            read = linker.downcallHandle(libc.find("read").orElseThrow(), FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG));
+            close = linker.downcallHandle(libc.find("close").orElseThrow(), FunctionDescriptor.of(JAVA_INT, JAVA_INT));
+        }
+        SYSCALL = syscall;
+        READ = read;
+        CLOSE = close;
+    }
+
+    private final Arena arena = Arena.ofConfined();
+    private final Source source;
+    private final List<String> events;
+    private final int[] fds;
+    private final MemorySegment buffer;
+    private final ThreadMXBean threads;
+
+    private final long[] startValues;
+    private final long[] stopValues;
+    private final long[] overhead;
+    private final PerfCountersTotals.Counts counts;
+    private final AtomicLongArray totals;
+    private final AtomicLong regions;
+
+    private PerfCounters(Source source, List<String> events, int[] fds) {
+        this.source = source;
+        this.events = events;
+        this.fds = fds;
+        this.buffer = arena.allocate(8L * (3 + events.size()), 8);
+        this.threads = source == Source.THREAD_CPU_TIME ? ManagementFactory.getThreadMXBean() : null;
+        this.startValues = new long[events.size()];
+        this.stopValues = new long[events.size()];
+        this.overhead = new long[events.size()];
+        // the clocks count the reads themselves as much as the region: subtracting them would leave only noise
+        if (source == Source.HARDWARE) {
+            calibrate();
+        }
+        this.counts = PerfCountersTotals.open(events, source == Source.HARDWARE);
+        this.totals = counts.totals;
+        this.regions = counts.regions;
+    }
+
+    /**
+     * Opens the best available counters for the current thread
+     */
+    public static PerfCounters open() {
+        List<String> failures = new ArrayList<>();
+        if (SYSCALL != null) {
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment callState = arena.allocate(CALL_STATE);
+                List<String> events = new ArrayList<>();
+                List<Integer> fds = new ArrayList<>();
+                for (Event event : HARDWARE_EVENTS) {
+                    int fd = perfEventOpen(arena, callState, event, fds.isEmpty() ? -1 : fds.get(0));
+                    if (fd >= 0) {
+                        events.add(event.name());
+                        fds.add(fd);
+                    } else if (fds.isEmpty()) {
+                        // no group leader, no hardware counters at all
+                        failures.add(event.name() + " errno " + ERRNO.get(callState));
+                        break;
+                    }
+                }
+                if (!fds.isEmpty()) {
+                    return new PerfCounters(Source.HARDWARE, events, fds.stream().mapToInt(Integer::intValue).toArray());
+                }
+                int fd = perfEventOpen(arena, callState, TASK_CLOCK, -1);
+                if (fd >= 0) {
+                    return new PerfCounters(Source.SOFTWARE, List.of(TASK_CLOCK.name()), new int[] { fd });
+                }
+                failures.add(TASK_CLOCK.name() + " errno " + ERRNO.get(callState));
+            }
+        } else {
+            failures.add("perf_event_open isn't available on " + System.getProperty("os.name") + "/" + System.getProperty("os.arch"));
+        }
+        System.err.println("PerfCounters falling back to the thread CPU time: " + failures);
+        return new PerfCounters(Source.THREAD_CPU_TIME, List.of(THREAD_CPU_TIME), new int[0]);
+    }
+
+    private static int perfEventOpen(Arena arena, MemorySegment callState, Event event, int groupFd) {
+        MemorySegment attr = arena.allocate(ATTR_SIZE, 8);
+        attr.fill((byte) 0);
+        attr.set(JAVA_INT, ATTR_TYPE, event.type());
+        attr.set(JAVA_INT, ATTR_SIZE_FIELD, ATTR_SIZE);
+        attr.set(JAVA_LONG, ATTR_CONFIG, event.config());
+        attr.set(JAVA_LONG, ATTR_READ_FORMAT, READ_FORMAT);
+        attr.set(JAVA_LONG, ATTR_FLAGS, EXCLUDE_KERNEL | EXCLUDE_HV);
+        try {
+            // pid = 0 and cpu = -1: the calling thread, on any cpu
+            return (int) (long) SYSCALL.invokeExact(callState, SYS_PERF_EVENT_OPEN, attr, 0L, -1L, (long) groupFd, 0L);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    public Source source() {
+        return source;
+    }
+
+    public List<String> events() {
+        return events;
+    }
+
+    public void start() {
+        read(startValues);
+    }
+
+    public void stop() {
+        long[] stopValues = this.stopValues;
+        read(stopValues);
+        for (int i = 0; i < stopValues.length; i++) {
+            totals.setRelease(i, totals.getPlain(i) + stopValues[i] - startValues[i] - overhead[i]);
+        }
+        regions.setRelease(regions.getPlain() + 1);
+    }
+
+    private void read(long[] values) {
+        if (threads != null) {
+            values[0] = threads.getCurrentThreadCpuTime();
+            return;
+        }
+        long size = buffer.byteSize();
+        long read;
+        try {
+            read = (long) READ.invokeExact(fds[0], buffer, size);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        if (read != size) {
+            throw new IllegalStateException("Reading the perf counters returned " + read + " instead of " + size);
+        }
+        long enabled = buffer.get(JAVA_LONG, 8);
+        long running = buffer.get(JAVA_LONG, 16);
+        double scale = running == 0 ? 0 : (double) enabled / running;
+        for (int i = 0; i < values.length; i++) {
+            long value = buffer.get(JAVA_LONG, 24 + 8L * i);
+            values[i] = running == enabled ? value : (long) (value * scale);
+        }
+    }
+
+    /**
+     * The minimum count of an empty region is the cost of reading the counters, subtracted from every region
+     */
+    private void calibrate() {
+        Arrays.fill(overhead, Long.MAX_VALUE);
+        for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            read(startValues);
+            read(stopValues);
+            for (int i = 0; i < overhead.length; i++) {
+                overhead[i] = Math.min(overhead[i], stopValues[i] - startValues[i]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!PerfCountersTotals.close(counts)) {
+            return;
+        }
+        for (int fd : fds) {
+            try {
+                int ignored = (int) CLOSE.invokeExact(fd);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+        arena.close();
+    }
+}
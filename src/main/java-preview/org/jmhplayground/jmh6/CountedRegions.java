@@ -0,0 +1,84 @@
+package org.jmhplayground.jmh6;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.jmhplayground.infra.PerfCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The HashSet lookup of {@link BranchPrediction}, with the hardware counters read around the lookup only: the
+ * branch-misses per op of the shuffled inputs are the ones of contains, not diluted by the harness (as with
+ * -prof perfnorm, to compare with). The score includes the cost of the regions, which are 2 read syscalls per op:
+ * it's the counters to look at, not the time. Without hardware counters (a VM, or perf_event_paranoid above 1 in
+ * some containers) only the software clocks are available, and with no per op resolution: they're reported per
+ * iteration, reads included, and the time is mostly the one of the syscalls.
+ *
+ * Run with
+ * -prof org.jmhplayground.infra.PerfCountersProfiler -prof perfnorm
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 400, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class CountedRegions {
+
+    private static final Set<String> HASHSET_PSEUDO_HEADERS = new HashSet<>(List.of(":path", ":authority", ":method", ":status", ":scheme", ":protocol"));
+
+    @State(Scope.Thread)
+    public static class Counters {
+
+        private PerfCounters counters;
+
+        @Setup
+        public void open() {
+            counters = PerfCounters.open();
+        }
+
+        @TearDown
+        public void close() {
+            counters.close();
+        }
+    }
+
+    @Param({"false", "true"})
+    private boolean shuffle;
+
+    private String[] inputs;
+
+    private InputSequence inputsSequence;
+
+    @Setup
+    public void setup() {
+        inputs = HASHSET_PSEUDO_HEADERS.stream().map(String::toCharArray).map(String::new).toArray(count -> new String[count]);
+        inputsSequence = new InputSequence(128 * 1024, inputs.length, shuffle ? 0 : 100, new Random(42));
+    }
+
+    @Benchmark
+    public boolean hashSet(Counters counters) {
+        String input = inputs[inputsSequence.next()];
+        counters.counters.start();
+        boolean contains = HASHSET_PSEUDO_HEADERS.contains(input);
+        counters.counters.stop();
+        return contains;
+    }
+
+    @Benchmark
+    public void emptyRegion(Counters counters) {
+        counters.counters.start();
+        counters.counters.stop();
+    }
+}
@@ -0,0 +1,245 @@
+package org.jmhplayground.extra;
+
+import java.util.concurrent.TimeUnit;
+
+import jdk.internal.vm.annotation.Contended;
+import org.jmhplayground.infra.ObjectLayout;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Two threads writing 2 different fields of the same object, each one its own, still contend for the cache line
+ * holding both of them: every write invalidates the copy of the line of the other core. This benchmark compares the
+ * same pair of indices laid out packed, manually padded with a class hierarchy (the JVM can reorder the fields of a
+ * class, but not move them across the hierarchy) and padded by the JVM with @Contended, written by:
+ * - counters: 2 threads, each incrementing its own index
+ * - queue: a single producer single consumer ring buffer, where the producer writes the tail and the consumer the
+ *   head, both reading the other one
+ * The setup checks with {@link ObjectLayout} that the indices are laid out as expected, e.g. the @Contended one
+ * isn't padded without -XX:-RestrictContended: outside the JDK the annotation is ignored by default.
+ * Use infra.FalseSharingDetector to find the fields written by different threads sharing a cache line.
+ *
+ * Needs at least 2 cores to show anything: with a single one the threads never run at the same time.
+ *
+ * Run with
+ * org.jmhplayground.extra.FalseSharing -prof perfnorm
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "-XX:-RestrictContended")
+public class FalseSharing {
+
+    private static final int CAPACITY = 1024;
+
+    public interface Indices {
+        long head();
+
+        void head(long head);
+
+        long tail();
+
+        void tail(long tail);
+    }
+
+    public static class PackedIndices implements Indices {
+        private volatile long head;
+        private volatile long tail;
+
+        @Override
+        public long head() {
+            return head;
+        }
+
+        @Override
+        public void head(long head) {
+            this.head = head;
+        }
+
+        @Override
+        public long tail() {
+            return tail;
+        }
+
+        @Override
+        public void tail(long tail) {
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * 128 bytes of padding, as @Contended: the adjacent line prefetcher pulls cache lines in pairs
+     */
+    static class HeadPad {
+        long p00, p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+    }
+
+    static class HeadIndex extends HeadPad {
+        volatile long head;
+    }
+
+    static class TailPad extends HeadIndex {
+        long p16, p17, p18, p19, p20, p21, p22, p23, p24, p25, p26, p27, p28, p29, p30, p31;
+    }
+
+    static class TailIndex extends TailPad {
+        volatile long tail;
+    }
+
+    public static class PaddedIndices extends TailIndex implements Indices {
+        long p32, p33, p34, p35, p36, p37, p38, p39, p40, p41, p42, p43, p44, p45, p46, p47;
+
+        @Override
+        public long head() {
+            return head;
+        }
+
+        @Override
+        public void head(long head) {
+            this.head = head;
+        }
+
+        @Override
+        public long tail() {
+            return tail;
+        }
+
+        @Override
+        public void tail(long tail) {
+            this.tail = tail;
+        }
+    }
+
+    public static class ContendedIndices implements Indices {
+        @Contended
+        private volatile long head;
+        @Contended
+        private volatile long tail;
+
+        @Override
+        public long head() {
+            return head;
+        }
+
+        @Override
+        public void head(long head) {
+            this.head = head;
+        }
+
+        @Override
+        public long tail() {
+            return tail;
+        }
+
+        @Override
+        public void tail(long tail) {
+            this.tail = tail;
+        }
+    }
+
+    public enum Layout {
+        PACKED, PADDED, CONTENDED;
+
+        Indices create() {
+            return switch (this) {
+                case PACKED -> new PackedIndices();
+                case PADDED -> new PaddedIndices();
+                case CONTENDED -> new ContendedIndices();
+            };
+        }
+    }
+
+    @Param
+    Layout layout;
+
+    Indices indices;
+    long[] buffer;
+
+    @Setup
+    public void createIndices() {
+        indices = layout.create();
+        buffer = new long[CAPACITY];
+        boolean packed = ObjectLayout.mayShareCacheLine(ObjectLayout.offset(indices.getClass(), "head"),
+                ObjectLayout.offset(indices.getClass(), "tail"));
+        if (packed != (layout == Layout.PACKED)) {
+            ObjectLayout.print(indices.getClass());
+            throw new IllegalStateException("The " + layout + " indices aren't laid out as expected: is -XX:-RestrictContended missing?");
+        }
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class OfferCounters {
+        public long fullQueue;
+        public long offersMade;
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class PollCounters {
+        public long emptyQueue;
+        public long pollsMade;
+    }
+
+    @Benchmark
+    @Group("counters")
+    @GroupThreads(1)
+    public void incrementHead() {
+        Indices indices = this.indices;
+        indices.head(indices.head() + 1);
+    }
+
+    @Benchmark
+    @Group("counters")
+    @GroupThreads(1)
+    public void incrementTail() {
+        Indices indices = this.indices;
+        indices.tail(indices.tail() + 1);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public boolean offer(OfferCounters counters) {
+        Indices indices = this.indices;
+        long tail = indices.tail();
+        if (tail - indices.head() == CAPACITY) {
+            counters.fullQueue++;
+            return false;
+        }
+        buffer[(int) tail & (CAPACITY - 1)] = tail;
+        indices.tail(tail + 1);
+        counters.offersMade++;
+        return true;
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public long poll(PollCounters counters) {
+        Indices indices = this.indices;
+        long head = indices.head();
+        if (head == indices.tail()) {
+            counters.emptyQueue++;
+            return -1;
+        }
+        long element = buffer[(int) head & (CAPACITY - 1)];
+        indices.head(head + 1);
+        counters.pollsMade++;
+        return element;
+    }
+}
@@ -0,0 +1,154 @@
+package org.jmhplayground.extra;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * The same param of jmh6.BranchPrediction shows how much cheaper the lookups are when the inputs are the canonical
+ * String instances instead of equal copies. This benchmark turns header names, received as raw bytes with a Zipf
+ * distribution (a few names are in every request, most are rare), into Strings:
+ * - copy: a new String each time, the baseline
+ * - headerNameCache: {@link HeaderNameCache}, bounded to cacheSize names besides the pinned well known ones
+ * - stringIntern: String.intern, on a new String
+ * - concurrentHashMap: an unbounded ConcurrentHashMap of the canonical Strings, on a new String
+ * and then, for copy and headerNameCache, looks them up in a HashSet of the well known names, as an HTTP stack would:
+ * the well known names are pinned in the cache with the very instances of the set, so its hits are identity hits,
+ * however many other names are evicted.
+ * With more distinct names than cacheSize the rare ones keep evicting each other, while the frequent ones stay.
+ *
+ * Run with
+ * -t 4 -prof gc org.jmhplayground.extra.HeaderInterning
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+public class HeaderInterning {
+
+    private static final List<String> WELL_KNOWN = List.of("host", "user-agent", "accept", "accept-encoding",
+            "accept-language", "connection", "content-type", "content-length", "cookie", "cache-control", "referer",
+            "authorization", "origin", "if-none-match", "if-modified-since", "upgrade-insecure-requests", "pragma",
+            "x-forwarded-for", "x-forwarded-proto", "x-request-id", "te", "dnt", "range", "sec-fetch-mode",
+            "sec-fetch-site", "sec-fetch-dest", "sec-ch-ua", "sec-ch-ua-mobile", "sec-ch-ua-platform", "via",
+            "forwarded", "expect");
+
+    private static final Set<String> WELL_KNOWN_SET = new HashSet<>(WELL_KNOWN);
+
+    private static final int TRAFFIC = 64 * 1024;
+
+    @Param({ "64", "4096" })
+    int distinct;
+
+    @Param({ "1.0" })
+    double zipfExponent;
+
+    @Param({ "256" })
+    int cacheSize;
+
+    /**
+     * Every name received is a copy of its bytes, as parsed from a different request
+     */
+    byte[][] traffic;
+
+    HeaderNameCache cache;
+    ConcurrentHashMap<String, String> map;
+
+    @Setup
+    public void createTraffic() {
+        List<String> names = new ArrayList<>(WELL_KNOWN);
+        for (int i = 0; names.size() < distinct; i++) {
+            names.add("x-custom-header-" + i);
+        }
+        // Zipf: the name of rank k is received with probability proportional to 1 / k^s, the well known ones first
+        double[] cumulative = new double[distinct];
+        double sum = 0;
+        for (int k = 0; k < distinct; k++) {
+            sum += 1 / Math.pow(k + 1, zipfExponent);
+            cumulative[k] = sum;
+        }
+        Random random = new Random(42);
+        traffic = new byte[TRAFFIC][];
+        for (int i = 0; i < TRAFFIC; i++) {
+            double u = random.nextDouble() * sum;
+            int k = 0;
+            while (cumulative[k] < u) {
+                k++;
+            }
+            traffic[i] = names.get(k).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        // the instances of the set are the canonical ones, never evicted
+        cache = new HeaderNameCache(cacheSize, WELL_KNOWN_SET);
+        map = new ConcurrentHashMap<>();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup
+        public void start(ThreadParams threads) {
+            // each thread walks the traffic from a different point
+            next = threads.getThreadIndex() * 7919;
+        }
+
+        byte[] next(byte[][] traffic) {
+            return traffic[next++ & (TRAFFIC - 1)];
+        }
+    }
+
+    @Benchmark
+    public String copy(Cursor cursor) {
+        return new String(cursor.next(traffic), StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public String headerNameCache(Cursor cursor) {
+        return cache.intern(cursor.next(traffic));
+    }
+
+    @Benchmark
+    public String stringIntern(Cursor cursor) {
+        return new String(cursor.next(traffic), StandardCharsets.ISO_8859_1).intern();
+    }
+
+    @Benchmark
+    public String concurrentHashMap(Cursor cursor) {
+        String name = new String(cursor.next(traffic), StandardCharsets.ISO_8859_1);
+        String canonical = map.get(name);
+        if (canonical == null) {
+            canonical = map.putIfAbsent(name, name);
+        }
+        return canonical == null ? name : canonical;
+    }
+
+    @Benchmark
+    public boolean copyThenLookup(Cursor cursor) {
+        return WELL_KNOWN_SET.contains(new String(cursor.next(traffic), StandardCharsets.ISO_8859_1));
+    }
+
+    @Benchmark
+    public boolean headerNameCacheThenLookup(Cursor cursor) {
+        return WELL_KNOWN_SET.contains(cache.intern(cursor.next(traffic)));
+    }
+}
@@ -0,0 +1,227 @@
+package org.jmhplayground.extra;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache mapping the raw ASCII bytes of a header name (or any CharSequence of ASCII chars) to a canonical
+ * String instance, so that the lookups downstream (e.g. the HashSet and the switch of jmh6.BranchPrediction) find
+ * the very same instance and take the identity fast path of equals, with the hash already computed.
+ *
+ * The well known names can be pinned when creating the cache: they're kept in a table of their own, never evicted
+ * and checked first, and their canonical instances are the ones given, e.g. the ones of a static set of the names.
+ *
+ * The other names are in a set associative table: the slots are split in disjoint sets of WAYS slots and a name can
+ * only be in the set its hash selects, which is all checked by a lookup, so the read path is a few volatile reads
+ * with no lock, no allocation and no write besides setting the CLOCK reference bit of the entry found, when not
+ * already set. Each entry keeps its hash, which is the String one (31 * h + c on the chars): comparing the hashes
+ * skips most of the byte by byte comparisons, and the canonical String never has to compute it again. On a miss the
+ * String is created and put in a free slot of its set or, when the set is full, replaces the first entry not
+ * referenced since the last sweep, starting from the hand of the set and clearing the reference bits on the way
+ * (CLOCK, one hand per set): frequently looked up names survive the one hit wonders.
+ * Two threads missing the same name at the same time can both insert it: this is a cache, so the only price is a
+ * second canonical instance until one of them is evicted.
+ *
+ * Names with non ASCII bytes or chars aren't header names (RFC 9110 tokens): they're returned as new Strings,
+ * without caching them.
+ * The names are taken as byte ranges or CharSequences: the AsciiString types of jmh5.Inlining and
+ * jmh5.RecursiveInlining are private to those benchmarks (an AsciiString, being a CharSequence, works anyway).
+ */
+public class HeaderNameCache {
+
+    private static final int WAYS = 8;
+
+    private static final class Entry {
+        final byte[] name;
+        final int hash;
+        final String value;
+        volatile boolean referenced;
+
+        Entry(byte[] name, int hash, String value) {
+            this.name = name;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private final Entry[] pinned;
+    private final int pinnedMask;
+
+    private final AtomicReferenceArray<Entry> table;
+    private final AtomicIntegerArray hands;
+    private final int setMask;
+
+    /**
+     * A cache of up to the given number of names, rounded up to a power of 2 (at least WAYS)
+     */
+    public HeaderNameCache(int capacity) {
+        this(capacity, List.of());
+    }
+
+    /**
+     * A cache of up to the given number of names, besides the pinned ones, whose canonical instances are the given ones
+     */
+    public HeaderNameCache(int capacity, Collection<String> pinnedNames) {
+        int size = Math.max(WAYS, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.table = new AtomicReferenceArray<>(size);
+        this.hands = new AtomicIntegerArray(size / WAYS);
+        this.setMask = size / WAYS - 1;
+        // at most half full: a missing name is found at the first empty slot
+        int pinnedSize = Integer.highestOneBit(Math.max(1, 2 * pinnedNames.size())) << 1;
+        this.pinned = new Entry[pinnedSize];
+        this.pinnedMask = pinnedSize - 1;
+        for (String name : pinnedNames) {
+            if (!isAscii(name)) {
+                throw new IllegalArgumentException("Not an ASCII name: " + name);
+            }
+            int hash = name.hashCode();
+            int slot = spread(hash) & pinnedMask;
+            while (pinned[slot] != null && !pinned[slot].value.equals(name)) {
+                slot = (slot + 1) & pinnedMask;
+            }
+            if (pinned[slot] == null) {
+                pinned[slot] = new Entry(name.getBytes(StandardCharsets.US_ASCII), hash, name);
+            }
+        }
+    }
+
+    public String intern(byte[] bytes) {
+        return intern(bytes, 0, bytes.length);
+    }
+
+    public String intern(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        int bits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + (bytes[i] & 0xff);
+            bits |= bytes[i];
+        }
+        if (bits < 0) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        for (int slot = spread(hash) & pinnedMask; pinned[slot] != null; slot = (slot + 1) & pinnedMask) {
+            Entry entry = pinned[slot];
+            if (entry.hash == hash && matches(entry.name, bytes, offset, length)) {
+                return entry.value;
+            }
+        }
+        int home = home(hash);
+        for (int i = 0; i < WAYS; i++) {
+            Entry entry = table.get(home + i);
+            if (entry != null && entry.hash == hash && matches(entry.name, bytes, offset, length)) {
+                return hit(entry);
+            }
+        }
+        byte[] name = new byte[length];
+        System.arraycopy(bytes, offset, name, 0, length);
+        return insert(home, new Entry(name, hash, new String(name, StandardCharsets.ISO_8859_1)));
+    }
+
+    public String intern(CharSequence chars) {
+        int length = chars.length();
+        int hash = 0;
+        int bits = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars.charAt(i);
+            hash = 31 * hash + c;
+            bits |= c;
+        }
+        if (bits > 0x7f) {
+            return chars.toString();
+        }
+        for (int slot = spread(hash) & pinnedMask; pinned[slot] != null; slot = (slot + 1) & pinnedMask) {
+            Entry entry = pinned[slot];
+            if (entry.hash == hash && matches(entry.name, chars)) {
+                return entry.value;
+            }
+        }
+        int home = home(hash);
+        for (int i = 0; i < WAYS; i++) {
+            Entry entry = table.get(home + i);
+            if (entry != null && entry.hash == hash && matches(entry.name, chars)) {
+                return hit(entry);
+            }
+        }
+        String value = chars.toString();
+        return insert(home, new Entry(value.getBytes(StandardCharsets.US_ASCII), hash, value));
+    }
+
+    private static String hit(Entry entry) {
+        // a plain check first: the hot entries are already referenced, and a write would bounce their cache line
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.value;
+    }
+
+    private String insert(int home, Entry entry) {
+        // the canonical String caches the hash computed here: equal by construction
+        entry.value.hashCode();
+        for (int i = 0; i < WAYS; i++) {
+            int slot = home + i;
+            if (table.get(slot) == null && table.compareAndSet(slot, null, entry)) {
+                return entry.value;
+            }
+        }
+        // CLOCK: give a second chance to the referenced entries, up to a full turn of the set from its hand
+        int set = home / WAYS;
+        int hand = hands.get(set);
+        for (int i = 0; i < 2 * WAYS; i++) {
+            int way = (hand + i) % WAYS;
+            Entry victim = table.get(home + way);
+            if (victim == null || !victim.referenced) {
+                if (table.compareAndSet(home + way, victim, entry)) {
+                    // racing inserts may move the hand back: it's only where the next sweep starts
+                    hands.set(set, (way + 1) % WAYS);
+                    return entry.value;
+                }
+            } else {
+                victim.referenced = false;
+            }
+        }
+        // every entry of the set is hit faster than it can be swept: don't cache this one
+        return entry.value;
+    }
+
+    /**
+     * The first slot of the set of the hash
+     */
+    private int home(int hash) {
+        return (spread(hash) & setMask) * WAYS;
+    }
+
+    private static int spread(int hash) {
+        // Fibonacci hashing: the String hash of similar names differs mostly in the low bits, moved to the high ones
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean isAscii(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] name, byte[] bytes, int offset, int length) {
+        return name.length == length && Arrays.equals(name, 0, length, bytes, offset, offset + length);
+    }
+
+    private static boolean matches(byte[] name, CharSequence chars) {
+        if (name.length != chars.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != chars.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
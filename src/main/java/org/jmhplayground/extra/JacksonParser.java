@@ -2,23 +2,36 @@ package org.jmhplayground.extra;
 
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.BufferRecycler;
 import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.core.util.RecyclerPool;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 
+/**
+ * The pool param compares the built-in recycler pools with the {@link StripedRecyclerPool}: under heap pressure the
+ * SoftReferences of the thread local pool get cleared and the parser buffers are allocated again, while the other
+ * pools keep them strongly reachable. The default is the thread local pool only.
+ *
+ * Run with
+ * -ppool=THREAD_LOCAL,LOCK_FREE,CONCURRENT_DEQUE,BOUNDED,NON_RECYCLING,STRIPED -i 5 -r 2s -prof gc -prof org.jmhplayground.infra.JfrSummaryProfiler -jvmArgsAppend "-Xmx24M -XX:SoftRefLRUPolicyMSPerMB=1"
+ * to compare GC pause times too (JFR needs some more heap)
+ */
 @State(Scope.Benchmark)
 @BenchmarkMode(Mode.AverageTime)
 @Warmup(iterations = 4, time = 1, timeUnit = TimeUnit.SECONDS)
@@ -27,16 +40,41 @@ import org.openjdk.jmh.annotations.Warmup;
 @Fork(value = 1, jvmArgsAppend = {"-Xmx15M", "-XX:SoftRefLRUPolicyMSPerMB=1"})
 public class JacksonParser {
 
+    public enum Pool implements Supplier<RecyclerPool<BufferRecycler>> {
+        THREAD_LOCAL,
+        LOCK_FREE,
+        CONCURRENT_DEQUE,
+        BOUNDED,
+        NON_RECYCLING,
+        STRIPED;
+
+        @Override
+        public RecyclerPool<BufferRecycler> get() {
+            return switch (this) {
+                case THREAD_LOCAL -> JsonRecyclerPools.threadLocalPool();
+                case LOCK_FREE -> JsonRecyclerPools.newLockFreePool();
+                case CONCURRENT_DEQUE -> JsonRecyclerPools.newConcurrentDequePool();
+                case BOUNDED -> JsonRecyclerPools.newBoundedPool(16);
+                case NON_RECYCLING -> JsonRecyclerPools.nonRecyclingPool();
+                case STRIPED -> new StripedRecyclerPool();
+            };
+        }
+    }
+
+    @Param({"THREAD_LOCAL"})
+    private Pool pool;
+
     private byte[] oldGenBuffer;
 
-    private JsonFactory jsonFactory = JsonFactory.builder()
-            .recyclerPool(JsonRecyclerPools.threadLocalPool())
-            .build();
+    private JsonFactory jsonFactory;
     private String json = "{'a':123,'b':'foobar'}".replace('\'', '"');
 
     @Setup
     public void setup() {
         oldGenBuffer = new byte[8 * 1024 * 1024];
+        jsonFactory = JsonFactory.builder()
+                .recyclerPool(pool.get())
+                .build();
     }
 
     @Benchmark
@@ -0,0 +1,102 @@
+package org.jmhplayground.extra;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jmhplayground.extra.counter.AdderCounter;
+import org.jmhplayground.extra.counter.AtomicCounter;
+import org.jmhplayground.extra.counter.Counter;
+import org.jmhplayground.extra.counter.StripedCounter;
+import org.jmhplayground.extra.counter.ThreadLocalCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The offersMade and pollsMade of {@link QueueThroughputWithBackoff} are per thread, but a metric counter is shared
+ * by all the threads doing the work it counts: if counting costs more than the work, the instrumentation becomes
+ * the bottleneck it's meant to measure. This benchmark measures separately the cost of
+ * - increment: every thread incrementing the same counter
+ * - sum: every thread reading it, after each one incremented it once (so the thread local counter has a cell per
+ *   thread to walk)
+ * - mixed: 3 threads incrementing while 1 reads, as a reporter would
+ * of the counter.Counter implementations, to be run with an increasing number of threads (-t, or -tg 3,1 for
+ * mixed). THREAD_LOCAL_BATCH publishes every 64 updates, so its reads miss up to 63 updates per thread.
+ *
+ * Run with
+ * -t 4 -prof perfnorm org.jmhplayground.extra.MetricsCounters
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+public class MetricsCounters {
+
+    public enum CounterType {
+        ATOMIC_LONG, LONG_ADDER, STRIPED, THREAD_LOCAL, THREAD_LOCAL_BATCH;
+
+        Counter create() {
+            return switch (this) {
+                case ATOMIC_LONG -> new AtomicCounter();
+                case LONG_ADDER -> new AdderCounter();
+                case STRIPED -> new StripedCounter();
+                case THREAD_LOCAL -> new ThreadLocalCounter();
+                case THREAD_LOCAL_BATCH -> new ThreadLocalCounter(64);
+            };
+        }
+    }
+
+    @Param
+    CounterType counterType;
+
+    Counter counter;
+
+    @Setup
+    public void createCounter() {
+        counter = counterType.create();
+    }
+
+    @State(Scope.Thread)
+    public static class Registered {
+
+        @Setup
+        public void incrementOnce(MetricsCounters benchmark) {
+            benchmark.counter.increment();
+        }
+    }
+
+    @Benchmark
+    public void increment() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public long sum(Registered registered) {
+        return counter.sum();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedIncrement() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public long mixedSum() {
+        return counter.sum();
+    }
+}
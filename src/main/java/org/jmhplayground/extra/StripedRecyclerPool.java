@@ -0,0 +1,83 @@
+package org.jmhplayground.extra;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.core.util.RecyclerPool;
+
+/**
+ * A {@link RecyclerPool} keeping the {@link BufferRecycler}s strongly reachable, so that, differently from the
+ * thread local pool (which holds them through SoftReferences), they are never evicted under heap pressure.
+ *
+ * The pooled recyclers are spread across stripes selected by thread id: each stripe is a small set of slots in a
+ * shared {@link AtomicReferenceArray} padded to its own cache line(s), so acquiring and releasing is lock free,
+ * allocation free and, as long as there are enough stripes for the threads, uncontended. When the stripe of the
+ * current thread is empty the other stripes are probed before allocating a new recycler, and recyclers released
+ * to a full stripe are dropped, bounding the retained memory to stripes * SLOTS recyclers.
+ */
+public class StripedRecyclerPool implements RecyclerPool<BufferRecycler> {
+
+    /**
+     * 16 references fill 64 bytes even with compressed oops: enough to not share a cache line with other stripes
+     */
+    private static final int STRIDE = 16;
+
+    private static final int SLOTS = 4;
+
+    private final AtomicReferenceArray<BufferRecycler> slots;
+    private final int stripeMask;
+
+    public StripedRecyclerPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedRecyclerPool(int concurrency) {
+        int stripes = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        this.stripeMask = stripes - 1;
+        // an extra stride at both ends keeps the first and last stripe away from the array header and neighbours
+        this.slots = new AtomicReferenceArray<>((stripes + 2) * STRIDE);
+    }
+
+    @Override
+    public BufferRecycler acquirePooled() {
+        int stripe = stripe();
+        for (int i = 0; i <= stripeMask; i++) {
+            BufferRecycler recycler = poll((stripe + i) & stripeMask);
+            if (recycler != null) {
+                return recycler;
+            }
+        }
+        return new BufferRecycler();
+    }
+
+    @Override
+    public void releasePooled(BufferRecycler recycler) {
+        int base = base(stripe());
+        for (int i = 0; i < SLOTS; i++) {
+            if (slots.get(base + i) == null && slots.compareAndSet(base + i, null, recycler)) {
+                return;
+            }
+        }
+    }
+
+    private BufferRecycler poll(int stripe) {
+        int base = base(stripe);
+        for (int i = 0; i < SLOTS; i++) {
+            BufferRecycler recycler = slots.get(base + i);
+            if (recycler != null && slots.compareAndSet(base + i, recycler, null)) {
+                return recycler;
+            }
+        }
+        return null;
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().threadId();
+        // spread sequential thread ids (Fibonacci hashing)
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & stripeMask;
+    }
+
+    private static int base(int stripe) {
+        return (stripe + 1) * STRIDE;
+    }
+}
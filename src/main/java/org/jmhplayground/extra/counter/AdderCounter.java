@@ -0,0 +1,22 @@
+package org.jmhplayground.extra.counter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link LongAdder}: a single value until the first failed CAS, then cells padded with @Contended, added on
+ * contention up to the number of cpus and selected by a per-thread probe which is rehashed on every collision.
+ */
+public class AdderCounter implements Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    @Override
+    public void add(long x) {
+        value.add(x);
+    }
+
+    @Override
+    public long sum() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,22 @@
+package org.jmhplayground.extra.counter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single {@link AtomicLong}: the cheapest and freshest read, but all the threads updating it contend for the same
+ * cache line, so every update is a cache miss as soon as more than one core is counting.
+ */
+public class AtomicCounter implements Counter {
+
+    private final AtomicLong value = new AtomicLong();
+
+    @Override
+    public void add(long x) {
+        value.getAndAdd(x);
+    }
+
+    @Override
+    public long sum() {
+        return value.get();
+    }
+}
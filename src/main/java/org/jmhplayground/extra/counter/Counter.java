@@ -0,0 +1,19 @@
+package org.jmhplayground.extra.counter;
+
+/**
+ * A metric counter updated by many threads and read, much less often, by a reporter: the implementations trade
+ * the cost of the updates under contention against the cost and the freshness of the reads.
+ */
+public interface Counter {
+
+    void add(long x);
+
+    default void increment() {
+        add(1);
+    }
+
+    /**
+     * The sum of the updates, not an atomic snapshot: updates concurrent with the read may or may not be counted
+     */
+    long sum();
+}
@@ -0,0 +1,70 @@
+package org.jmhplayground.extra.counter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of stripes, each one in its own pair of cache lines of a shared {@link AtomicLongArray}, as in
+ * extra.StripedRecyclerPool. A thread starts from the stripe selected by the hash of its id and, when its CAS fails
+ * because another thread is updating the same stripe, probes the next one by rehashing: differently from
+ * {@link AdderCounter} the probe isn't remembered, so that an update costs no thread local lookup, and colliding
+ * threads keep colliding first on their home stripe.
+ */
+public class StripedCounter implements Counter {
+
+    /**
+     * 16 longs are 128 bytes: the adjacent line prefetcher pulls cache lines in pairs
+     */
+    private static final int STRIDE = 16;
+
+    private final AtomicLongArray stripes;
+    private final int stripeMask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounter(int concurrency) {
+        int stripes = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        this.stripeMask = stripes - 1;
+        // an extra stride at both ends keeps the first and last stripe away from the array header and neighbours
+        this.stripes = new AtomicLongArray((stripes + 2) * STRIDE);
+    }
+
+    @Override
+    public void add(long x) {
+        int probe = probe(Thread.currentThread().threadId());
+        for (int attempt = 0; attempt <= stripeMask; attempt++) {
+            int index = base(probe & stripeMask);
+            long value = stripes.get(index);
+            if (stripes.compareAndSet(index, value, value + x)) {
+                return;
+            }
+            // xorshift, as ThreadLocalRandom.advanceProbe
+            probe ^= probe << 13;
+            probe ^= probe >>> 17;
+            probe ^= probe << 5;
+        }
+        // every stripe probed is busy: wait for the home one
+        stripes.getAndAdd(base(probe(Thread.currentThread().threadId()) & stripeMask), x);
+    }
+
+    @Override
+    public long sum() {
+        long sum = 0;
+        for (int stripe = 0; stripe <= stripeMask; stripe++) {
+            sum += stripes.get(base(stripe));
+        }
+        return sum;
+    }
+
+    private static int probe(long threadId) {
+        // Fibonacci hashing: consecutive ids are spread over all the stripes
+        int probe = (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32);
+        // xorshift never leaves 0
+        return probe == 0 ? 1 : probe;
+    }
+
+    private static int base(int stripe) {
+        return (stripe + 1) * STRIDE;
+    }
+}
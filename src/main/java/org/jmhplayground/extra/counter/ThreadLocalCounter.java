@@ -0,0 +1,97 @@
+package org.jmhplayground.extra.counter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Each thread accumulates in a cell of its own and publishes the count every batch updates: a cell has a single
+ * writer, so publishing is a release store instead of a CAS, and with batch > 1 most updates touch no shared memory
+ * at all. The price is on the reads, which walk the cells of all the threads which ever updated the counter (they're
+ * never removed, to not lose their counts), and miss up to batch - 1 updates per thread, until {@link #flush()}.
+ */
+public class ThreadLocalCounter implements Counter {
+
+    /**
+     * Padding on both sides of the published value, across the hierarchy so that the JVM can't reorder it away,
+     * keeps the cells of different threads off each other's cache lines
+     */
+    static class CellPad {
+        long p00, p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+    }
+
+    static class CellValue extends CellPad {
+        long published;
+    }
+
+    static final class Cell extends CellValue {
+        long p16, p17, p18, p19, p20, p21, p22, p23, p24, p25, p26, p27, p28, p29, p30, p31;
+        // only ever used by the owner thread
+        long pending;
+        int updates;
+    }
+
+    private static final VarHandle PUBLISHED;
+
+    static {
+        try {
+            PUBLISHED = MethodHandles.lookup().findVarHandle(CellValue.class, "published", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int batch;
+    private final Queue<Cell> cells = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Cell> cell = ThreadLocal.withInitial(this::register);
+
+    public ThreadLocalCounter() {
+        this(1);
+    }
+
+    public ThreadLocalCounter(int batch) {
+        if (batch < 1) {
+            throw new IllegalArgumentException("The batch must be at least 1, not " + batch);
+        }
+        this.batch = batch;
+    }
+
+    private Cell register() {
+        Cell cell = new Cell();
+        cells.add(cell);
+        return cell;
+    }
+
+    @Override
+    public void add(long x) {
+        Cell cell = this.cell.get();
+        cell.pending += x;
+        if (++cell.updates >= batch) {
+            publish(cell);
+        }
+    }
+
+    /**
+     * Publishes the updates of the current thread not published yet
+     */
+    public void flush() {
+        publish(cell.get());
+    }
+
+    private static void publish(Cell cell) {
+        // the owner is the only writer: a plain read of its own value is up to date
+        PUBLISHED.setRelease(cell, cell.published + cell.pending);
+        cell.pending = 0;
+        cell.updates = 0;
+    }
+
+    @Override
+    public long sum() {
+        long sum = 0;
+        for (Cell cell : cells) {
+            sum += (long) PUBLISHED.getAcquire(cell);
+        }
+        return sum;
+    }
+}
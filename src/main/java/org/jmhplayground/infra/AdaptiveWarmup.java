@@ -0,0 +1,263 @@
+package org.jmhplayground.infra;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * The warmup of each benchmark class is a fixed guess, e.g. 10x400ms for jmh4.TypeProfilePollution and 4x1s for
+ * extra.JacksonParser, and JMH can't end it earlier. This finds how much warmup each benchmark actually needs and
+ * writes it as the -wi and -w of each benchmark, which {@link SuiteScheduler} -warmup uses for the suite runs.
+ *
+ * Each benchmark/params is probed by a regular JMH fork running max iterations, with {@link JitActivityProfiler}
+ * counting the compilations and deoptimizations of the benchmark code in each of them: the warmup needed ends at
+ * the first iteration where the scores of the last window iterations are all within the tolerance of their median
+ * and the JIT has been quiet, i.e. it compiled or deoptimized at most quiet methods of the benchmark code in each of
+ * them. The probe can't stop the fork earlier, so it costs max iterations once, to be saved on every suite run.
+ * The benchmark is then measured in regular forks warmed up by the iterations found, and the report compares the
+ * warmup found with the fixed one of the annotations (or the JMH defaults). A benchmark gets the most warmup needed
+ * by any of its params, as -wi applies to all of them.
+ *
+ * Options
+ * -tolerance 0.05   the band around the median the window scores must be in
+ * -window 5         how many consecutive iterations must be steady
+ * -quiet 0          the max compilations/deoptimizations of benchmark methods in each steady iteration
+ * -max 50           the iterations of the probe, i.e. the cap on the warmup iterations
+ * -w time           the warmup iteration time, by default the one of the annotation
+ * -i n, -r time     the measurement iterations and their time, by default the ones of the annotation
+ * -p name=v1,v2     params, by default all the ones of the annotations
+ * -o file           where the warmup settings are written, target/adaptive-warmup.properties by default
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.AdaptiveWarmup -w 100ms org.jmhplayground.jmh6.BranchPrediction.*
+ * java -cp target/benchmark.jar org.jmhplayground.infra.SuiteScheduler -warmup target/adaptive-warmup.properties org.jmhplayground.jmh6.BranchPrediction.*
+ */
+public class AdaptiveWarmup {
+
+    public record Report(BenchmarkListEntry benchmark, String label, int iterations, TimeValue time, double fixedSeconds,
+                         int compilations, boolean steady, RunResult result) {
+
+        double seconds() {
+            return iterations * time.convertTo(TimeUnit.MILLISECONDS) / 1000.0;
+        }
+    }
+
+    private final String include;
+    private final Map<String, String[]> params = new LinkedHashMap<>();
+    private double tolerance = 0.05;
+    private int window = 5;
+    private int quiet = 0;
+    private int maxIterations = 50;
+    private TimeValue warmupTime;
+    private Integer measurementIterations;
+    private TimeValue measurementTime;
+    private Path output = Path.of("target", "adaptive-warmup.properties");
+
+    public AdaptiveWarmup(String include) {
+        this.include = include;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String include = null;
+        List<String[]> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-")) {
+                options.add(new String[] { args[i], args[++i] });
+            } else {
+                include = args[i];
+            }
+        }
+        if (include == null) {
+            System.err.println("Usage: AdaptiveWarmup [-tolerance 0.05] [-window 5] [-quiet 0] [-max 50] [-w time] [-i n] [-r time] [-p name=v1,v2] [-o file] <benchmark regexp>");
+            System.exit(2);
+        }
+        AdaptiveWarmup adaptiveWarmup = new AdaptiveWarmup(include);
+        for (String[] option : options) {
+            switch (option[0]) {
+                case "-tolerance" -> adaptiveWarmup.tolerance = Double.parseDouble(option[1]);
+                case "-window" -> adaptiveWarmup.window = Integer.parseInt(option[1]);
+                case "-quiet" -> adaptiveWarmup.quiet = Integer.parseInt(option[1]);
+                case "-max" -> adaptiveWarmup.maxIterations = Integer.parseInt(option[1]);
+                case "-w" -> adaptiveWarmup.warmupTime = TimeValue.fromString(option[1]);
+                case "-i" -> adaptiveWarmup.measurementIterations = Integer.parseInt(option[1]);
+                case "-r" -> adaptiveWarmup.measurementTime = TimeValue.fromString(option[1]);
+                case "-p" -> {
+                    String[] param = option[1].split("=", 2);
+                    adaptiveWarmup.params.put(param[0], param[1].split(","));
+                }
+                case "-o" -> adaptiveWarmup.output = Path.of(option[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + option[0]);
+            }
+        }
+        List<Report> reports = adaptiveWarmup.run();
+        print(reports);
+        adaptiveWarmup.writeSettings(reports);
+    }
+
+    /**
+     * Probes and measures each benchmark/params
+     */
+    public List<Report> run() throws IOException, RunnerException {
+        List<Report> reports = new ArrayList<>();
+        Path dir = Files.createTempDirectory("adaptive-warmup");
+        for (BenchmarkListEntry benchmark : Benchmarks.find(include)) {
+            for (Map<String, String> combination : combinations(benchmark)) {
+                System.out.println("# " + benchmark.getUsername() + " " + combination);
+                reports.add(run(benchmark, combination, dir.resolve(reports.size() + ".jit.log")));
+            }
+        }
+        return reports;
+    }
+
+    private Report run(BenchmarkListEntry benchmark, Map<String, String> combination, Path jitLog) throws RunnerException {
+        // the JMH defaults are 5 iterations of 10 seconds
+        TimeValue fixedTime = benchmark.getWarmupTime().orElse(TimeValue.seconds(10));
+        double fixedSeconds = benchmark.getWarmupIterations().orElse(5) * fixedTime.convertTo(TimeUnit.MILLISECONDS) / 1000.0;
+        TimeValue time = warmupTime != null ? warmupTime : fixedTime;
+
+        RunResult probe = new Runner(options(benchmark, combination)
+                .forks(1)
+                .warmupIterations(0)
+                .measurementIterations(maxIterations)
+                .measurementTime(time)
+                // prepended, so that the jvmArgsAppend of the annotation are still applied
+                .jvmArgsPrepend("-Xlog:jit+compilation=debug:file=" + jitLog.toAbsolutePath())
+                .addProfiler(JitActivityProfiler.class, "log=" + jitLog.toAbsolutePath())
+                .build()).runSingle();
+        List<Double> scores = new ArrayList<>();
+        List<Integer> compiled = new ArrayList<>();
+        for (IterationResult iteration : probe.getBenchmarkResults().iterator().next().getIterationResults()) {
+            Result compilations = iteration.getSecondaryResults().get(JitActivityProfiler.COMPILATIONS);
+            scores.add(iteration.getPrimaryResult().getScore());
+            compiled.add(compilations == null ? 0 : (int) compilations.getScore());
+            System.out.printf("Probe iteration %3d: %.3f %s, JIT %d%n", scores.size(), iteration.getPrimaryResult().getScore(),
+                    iteration.getPrimaryResult().getScoreUnit(), compiled.get(compiled.size() - 1));
+        }
+        int iterations = steadyAt(scores, compiled);
+        boolean steady = iterations > 0;
+        if (!steady) {
+            iterations = scores.size();
+        }
+        System.out.println(steady ? "Steady after " + iterations + " iterations" : "Never steady in " + iterations + " iterations");
+
+        ChainedOptionsBuilder measurement = options(benchmark, combination)
+                .warmupIterations(iterations)
+                .warmupTime(time);
+        if (measurementIterations != null) {
+            measurement.measurementIterations(measurementIterations);
+        }
+        if (measurementTime != null) {
+            measurement.measurementTime(measurementTime);
+        }
+        RunResult result = new Runner(measurement.build()).runSingle();
+        int compilations = compiled.subList(0, iterations).stream().mapToInt(Integer::intValue).sum();
+        return new Report(benchmark, Benchmarks.label(result.getParams()), iterations, time, fixedSeconds, compilations, steady, result);
+    }
+
+    private ChainedOptionsBuilder options(BenchmarkListEntry benchmark, Map<String, String> combination) {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .include(Benchmarks.exactly(benchmark))
+                .verbosity(VerboseMode.SILENT);
+        combination.forEach((name, value) -> builder.param(name, value));
+        return builder;
+    }
+
+    private List<Map<String, String>> combinations(BenchmarkListEntry benchmark) {
+        Map<String, String[]> values = new LinkedHashMap<>(benchmark.getParams().orElse(Map.of()));
+        params.forEach((name, paramValues) -> {
+            if (values.containsKey(name)) {
+                values.put(name, paramValues);
+            }
+        });
+        List<Map<String, String>> combinations = List.of(Map.of());
+        for (Map.Entry<String, String[]> param : values.entrySet()) {
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> combination : combinations) {
+                for (String value : param.getValue()) {
+                    Map<String, String> extended = new LinkedHashMap<>(combination);
+                    extended.put(param.getKey(), value);
+                    next.add(extended);
+                }
+            }
+            combinations = next;
+        }
+        return combinations;
+    }
+
+    /**
+     * The iterations up to the first steady window included, or 0 if there is none
+     */
+    private int steadyAt(List<Double> scores, List<Integer> compiled) {
+        for (int end = window; end <= scores.size(); end++) {
+            if (isSteady(scores.subList(end - window, end), compiled.subList(end - window, end))) {
+                return end;
+            }
+        }
+        return 0;
+    }
+
+    private boolean isSteady(List<Double> scores, List<Integer> compiled) {
+        if (compiled.stream().anyMatch(c -> c > quiet)) {
+            return false;
+        }
+        double[] sorted = scores.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        double median = sorted[sorted.length / 2];
+        return sorted[0] >= median * (1 - tolerance) && sorted[sorted.length - 1] <= median * (1 + tolerance);
+    }
+
+    /**
+     * Writes [benchmark].wi and [benchmark].w for each benchmark, the most iterations needed by any of its params
+     */
+    private void writeSettings(List<Report> reports) throws IOException {
+        Properties settings = new Properties();
+        for (Report report : reports) {
+            String benchmark = report.benchmark().getUsername();
+            int iterations = Math.max(report.iterations(), Integer.parseInt(settings.getProperty(benchmark + ".wi", "0")));
+            settings.setProperty(benchmark + ".wi", Integer.toString(iterations));
+            settings.setProperty(benchmark + ".w", report.time().toString());
+        }
+        if (output.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(output.toAbsolutePath().getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(output)) {
+            settings.store(writer, "Warmup found by AdaptiveWarmup, for SuiteScheduler -warmup");
+        }
+        System.out.println("Warmup settings written to " + output + ", run the suite with SuiteScheduler -warmup " + output);
+    }
+
+    public static void print(List<Report> reports) {
+        int width = Math.max("Benchmark".length(), reports.stream().mapToInt(r -> r.label().length()).max().orElse(0));
+        System.out.println();
+        System.out.printf("%-" + width + "s  %10s  %10s  %10s  %10s  %6s  %12s  %10s  %s%n",
+                "Benchmark", "Iterations", "Warmup s", "Fixed s", "JIT", "Steady", "Score", "Error", "Units");
+        double total = 0;
+        double fixed = 0;
+        for (Report report : reports) {
+            total += report.seconds();
+            fixed += report.fixedSeconds();
+            Result score = report.result().getPrimaryResult();
+            System.out.printf("%-" + width + "s  %10d  %10.2f  %10.2f  %10d  %6s  %12.3f  %10.3f  %s%n",
+                    report.label(), report.iterations(), report.seconds(), report.fixedSeconds(), report.compilations(),
+                    report.steady(), score.getScore(), score.getScoreError(), score.getScoreUnit());
+        }
+        System.out.printf("%nTotal warmup per fork %.2f s, fixed warmup %.2f s%n", total, fixed);
+    }
+}
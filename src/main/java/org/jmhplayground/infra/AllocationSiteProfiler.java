@@ -0,0 +1,197 @@
+package org.jmhplayground.infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.BenchmarkResultMetaData;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * -prof gc tells how many bytes each operation allocates, but not who allocates them. This profiler records only
+ * the allocation events with JFR and breaks the alloc/op of the measurement iterations down by allocation site,
+ * i.e. the allocated type and the allocating stack (JDK and JMH frames skipped), reported as secondary results:
+ * for extra.JacksonParser this separates the buffer recycling misses (char[] @ BufferRecycler.calloc) from the
+ * String creation (String @ TextBuffer.contentsAsString) in parseJson.
+ *
+ * Options (separated by ;)
+ * mode=sample|tlab   sample uses jdk.ObjectAllocationSample (default, cheap and unbiased but throttled),
+ *                    tlab uses the new TLAB/outside TLAB events (each TLAB refill attributed to the allocation
+ *                    that triggered it), more samples at a much higher overhead
+ * depth=[frames]     how many non JDK/JMH frames identify a site, 2 by default
+ * top=[sites]        how many sites are reported, the remaining ones are summed in alloc.site.other, 5 by default
+ *
+ * The sites are summed over all the measurement forks and reported by the last one only, so that the top ones are
+ * the top ones of the whole trial and, together with alloc.site.other, add up to alloc.total (also over all the
+ * forks): reported by each fork, a site in the top of some forks only would be averaged over those forks only.
+ *
+ * As for {@link JfrSummaryProfiler} JFR needs some heap for itself, so extra.JacksonParser must be run with
+ * -jvmArgsAppend "-Xmx24M -XX:SoftRefLRUPolicyMSPerMB=1"
+ *
+ * Run with
+ * -prof org.jmhplayground.infra.AllocationSiteProfiler
+ * -prof "org.jmhplayground.infra.AllocationSiteProfiler:mode=tlab;depth=3;top=10"
+ */
+public class AllocationSiteProfiler implements ExternalProfiler {
+
+    private static final String SAMPLE_SETTINGS = "settings=none,+jdk.ObjectAllocationSample#enabled=true,"
+            + "+jdk.ObjectAllocationSample#throttle=10000/s,+jdk.ObjectAllocationSample#stackTrace=true";
+
+    private static final String TLAB_SETTINGS = "settings=none,+jdk.ObjectAllocationInNewTLAB#enabled=true,"
+            + "+jdk.ObjectAllocationInNewTLAB#stackTrace=true,+jdk.ObjectAllocationOutsideTLAB#enabled=true,"
+            + "+jdk.ObjectAllocationOutsideTLAB#stackTrace=true";
+
+    private final boolean tlab;
+    private final int depth;
+    private final int top;
+
+    private Path recording;
+
+    // the sites of the measurement forks of the current trial, reported after its last fork
+    private String trial;
+    private int forksSeen;
+    private final Map<String, Long> bytesBySite = new HashMap<>();
+    private long totalBytes;
+    private double ops;
+
+    public AllocationSiteProfiler(String initLine) {
+        Map<String, String> options = JfrSummaryProfiler.options(initLine);
+        this.tlab = options.getOrDefault("mode", "sample").equals("tlab");
+        this.depth = Integer.parseInt(options.getOrDefault("depth", "2"));
+        this.top = Integer.parseInt(options.getOrDefault("top", "5"));
+    }
+
+    public AllocationSiteProfiler() {
+        this("");
+    }
+
+    @Override
+    public Collection<String> addJVMInvokeOptions(BenchmarkParams params) {
+        return List.of();
+    }
+
+    @Override
+    public Collection<String> addJVMOptions(BenchmarkParams params) {
+        try {
+            recording = Files.createTempFile("alloc-sites", ".jfr");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return List.of("-XX:StartFlightRecording:" + (tlab ? TLAB_SETTINGS : SAMPLE_SETTINGS) + ",filename=" + recording.toAbsolutePath());
+    }
+
+    @Override
+    public void beforeTrial(BenchmarkParams params) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterTrial(BenchmarkResult br, long pid, File stdOut, File stdErr) {
+        BenchmarkParams params = br.getParams();
+        if (!params.id().equals(trial)) {
+            // a new benchmark, or the previous one stopped at a failed fork
+            trial = params.id();
+            forksSeen = 0;
+            bytesBySite.clear();
+            totalBytes = 0;
+            ops = 0;
+        }
+        forksSeen++;
+        Map<String, Long> forkBytesBySite = read(br.getMetadata());
+        // the warmup forks come first, their results are discarded
+        if (forksSeen <= params.getWarmupForks() || forkBytesBySite == null) {
+            return List.of();
+        }
+        forkBytesBySite.forEach((site, bytes) -> {
+            bytesBySite.merge(site, bytes, Long::sum);
+            totalBytes += bytes;
+        });
+        ops += br.getMetadata().getMeasurementOps();
+        if (forksSeen < params.getWarmupForks() + params.getForks() || ops == 0) {
+            return List.of();
+        }
+        // only this fork reports: the top sites are the ones of all the forks, and they add up with the total
+        List<Result> results = new ArrayList<>();
+        results.add(new ScalarResult("alloc.total", totalBytes / ops, "B/op", AggregationPolicy.AVG));
+        long reported = 0;
+        var sites = bytesBySite.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(top)
+                .toList();
+        for (var site : sites) {
+            results.add(new ScalarResult("alloc.site: " + site.getKey(), site.getValue() / ops, "B/op", AggregationPolicy.AVG));
+            reported += site.getValue();
+        }
+        results.add(new ScalarResult("alloc.site.other", (totalBytes - reported) / ops, "B/op", AggregationPolicy.AVG));
+        return results;
+    }
+
+    /**
+     * The bytes allocated by each site during the measurement iterations of the fork, null if there are none
+     */
+    private Map<String, Long> read(BenchmarkResultMetaData metadata) {
+        try {
+            if (metadata == null || metadata.getMeasurementOps() == 0 || !Files.exists(recording)) {
+                return null;
+            }
+            Instant from = Instant.ofEpochMilli(metadata.getMeasurementTime());
+            Instant to = Instant.ofEpochMilli(metadata.getStopTime());
+            Map<String, Long> bytesBySite = new HashMap<>();
+            try (RecordingFile file = new RecordingFile(recording)) {
+                while (file.hasMoreEvents()) {
+                    RecordedEvent event = file.readEvent();
+                    if (event.getStartTime().isBefore(from) || event.getStartTime().isAfter(to)) {
+                        continue;
+                    }
+                    long bytes = bytes(event);
+                    if (bytes > 0) {
+                        bytesBySite.merge(JfrSummary.allocationSite(event, depth), bytes, Long::sum);
+                    }
+                }
+            }
+            return bytesBySite;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            recording.toFile().delete();
+        }
+    }
+
+    private static long bytes(RecordedEvent event) {
+        return switch (event.getEventType().getName()) {
+            case "jdk.ObjectAllocationSample" -> event.getLong("weight");
+            case "jdk.ObjectAllocationInNewTLAB" -> event.getLong("tlabSize");
+            case "jdk.ObjectAllocationOutsideTLAB" -> event.getLong("allocationSize");
+            default -> 0;
+        };
+    }
+
+    @Override
+    public boolean allowPrintOut() {
+        return true;
+    }
+
+    @Override
+    public boolean allowPrintErr() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Allocation per op broken down by allocation site, from JFR allocation events";
+    }
+}
@@ -0,0 +1,89 @@
+package org.jmhplayground.infra;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * Helpers shared by the runners driving the benchmarks of this jar with different JVM configurations
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * The benchmarks of this jar matching the regexp, as listed by the JMH annotation processor
+     */
+    public static SortedSet<BenchmarkListEntry> find(String include) {
+        return BenchmarkList.defaultList().find(OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT),
+                List.of(include), List.of());
+    }
+
+    /**
+     * The regexp matching only the given benchmark method
+     */
+    public static String exactly(BenchmarkListEntry benchmark) {
+        return "^" + Pattern.quote(benchmark.getUsername()) + "$";
+    }
+
+    /**
+     * JVM options given on the command line replace the ones of the @Fork annotation, while a JVM configuration
+     * matrix must be applied on top of them (e.g. extra.JacksonParser must keep its -Xmx15M): this returns the
+     * annotation jvmArgsAppend followed by the extra ones, so that the extra ones win for repeated flags.
+     */
+    public static String[] jvmArgsAppend(BenchmarkListEntry benchmark, List<String> extraArgs) {
+        List<String> args = new ArrayList<>(benchmark.getJvmArgsAppend().orElse(List.of()));
+        args.addAll(extraArgs);
+        return args.toArray(String[]::new);
+    }
+
+    /**
+     * The java launcher of the running JVM, the same used by JMH for the forks
+     */
+    public static String java() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    /**
+     * Checks if the JVM starts with the given options, e.g. a collector or a JIT which isn't part of this build
+     */
+    public static boolean jvmAccepts(List<String> args) {
+        List<String> command = new ArrayList<>();
+        command.add(java());
+        command.addAll(args);
+        command.add("-version");
+        try {
+            return new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start()
+                    .waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * e.g. jmh5.Inlining.isUppercase callDepth=2 size=100
+     */
+    public static String label(BenchmarkParams params) {
+        StringBuilder label = new StringBuilder(params.getBenchmark().replace("org.jmhplayground.", ""));
+        for (String param : params.getParamsKeys()) {
+            label.append(' ').append(param).append('=').append(params.getParam(param));
+        }
+        return label.toString();
+    }
+}
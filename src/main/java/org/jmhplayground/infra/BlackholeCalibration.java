@@ -0,0 +1,375 @@
+package org.jmhplayground.infra;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jmhplayground.jmh2.BlackholeCost;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * When the measured operation costs only a few ns (e.g. jmh4.TypeProfilePollution or jmh6.BranchPrediction) the
+ * harness overhead, i.e. the benchmark loop and the (implicit) blackhole consuming the returned value, can be a
+ * relevant part of the score, and it greatly differs between compiler assisted and software blackholes.
+ *
+ * calibrate runs {@link BlackholeCost} on this JVM once for each blackhole mode and stores, with their errors, the
+ * cost of the loop and of sinking each kind of value (int, long, Object, array), both returning it and passing it
+ * to Blackhole::consume, in a properties file. JMH picks the blackhole mode in the host JVM (-Djmh.blackhole.mode
+ * given to the forks is ignored), so each mode is run by a JMH host of its own, and its costs are stored under the
+ * mode that host reported using.
+ *
+ * subtract runs the selected benchmarks and reports their scores next to the same scores minus the calibrated
+ * infrastructure cost: the loop baseline plus the cost of consuming the value returned by the benchmark method.
+ * The explicit Blackhole::consume calls of a benchmark aren't subtracted, as how many values it consumes isn't known.
+ * Only time/op modes can be corrected, and only by an overhead larger than its own error: a smaller one is within
+ * the noise of the calibration, and the score is left as it is. The calibration applied is the one of the blackhole
+ * mode reported by the run, which can be chosen running this with -Djmh.blackhole.mode.
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.BlackholeCalibration calibrate
+ * java -cp target/benchmark.jar org.jmhplayground.infra.BlackholeCalibration subtract org.jmhplayground.jmh6.BranchPrediction.*
+ * java -Djmh.blackhole.mode=FULL -cp target/benchmark.jar org.jmhplayground.infra.BlackholeCalibration subtract org.jmhplayground.jmh6.BranchPrediction.*
+ */
+public class BlackholeCalibration {
+
+    /**
+     * Mirrors the modes of org.openjdk.jmh.runner.CompilerHints.BlackholeMode, which isn't public
+     */
+    public enum BlackholeMode {
+        COMPILER("compiler"), FULL_DONTINLINE("full + dont-inline hint"), FULL("full");
+
+        private static final String PREFIX = "# Blackhole mode: ";
+
+        private final String description;
+
+        BlackholeMode(String description) {
+            this.description = description;
+        }
+
+        /**
+         * The mode actually used, as printed by JMH in the header of each run, e.g.
+         * "# Blackhole mode: compiler (auto-detected, use -Djmh.blackhole.autoDetect=false to disable)", or null
+         * if the line isn't that one. JMH picks the mode in the host JVM, and falls back when the requested one isn't
+         * available in the JVM: the system property alone doesn't tell.
+         */
+        public static BlackholeMode fromOutputLine(String line) {
+            if (!line.startsWith(PREFIX)) {
+                return null;
+            }
+            String description = line.substring(PREFIX.length());
+            int details = description.indexOf(" (");
+            if (details >= 0) {
+                description = description.substring(0, details);
+            }
+            for (BlackholeMode mode : values()) {
+                if (mode.description.equals(description.trim())) {
+                    return mode;
+                }
+            }
+            throw new IllegalStateException("Unknown blackhole mode " + description);
+        }
+    }
+
+    public enum ValueKind {
+        NONE, INT, LONG, OBJECT, ARRAY;
+
+        public static ValueKind of(Class<?> type) {
+            if (type == void.class) {
+                return NONE;
+            }
+            if (type == long.class || type == double.class) {
+                return LONG;
+            }
+            if (type.isPrimitive()) {
+                return INT;
+            }
+            return type.isArray() ? ARRAY : OBJECT;
+        }
+
+        private String capitalized() {
+            return name().charAt(0) + name().substring(1).toLowerCase();
+        }
+    }
+
+    private static final Path DEFAULT_CALIBRATION = Path.of("target", "blackhole-calibration.properties");
+
+    private final Properties calibration;
+
+    public BlackholeCalibration(Properties calibration) {
+        this.calibration = calibration;
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BlackholeCalibration calibrate [-calibration file] | subtract [-calibration file] <benchmark regexp>");
+            System.exit(2);
+        }
+        Path file = DEFAULT_CALIBRATION;
+        String include = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-calibration")) {
+                file = Path.of(args[++i]);
+            } else {
+                include = args[i];
+            }
+        }
+        switch (args[0]) {
+            case "calibrate" -> {
+                Properties calibration = calibrate();
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                try (Writer writer = Files.newBufferedWriter(file)) {
+                    calibration.store(writer, "Blackhole costs in ns/op on " + System.getProperty("java.vm.name") + " " + Runtime.version());
+                }
+                printCalibration(calibration);
+            }
+            case "subtract" -> {
+                Properties calibration = new Properties();
+                try (Reader reader = Files.newBufferedReader(file)) {
+                    calibration.load(reader);
+                }
+                new BlackholeCalibration(calibration).subtract(include);
+            }
+            default -> throw new IllegalArgumentException("Unknown command " + args[0]);
+        }
+    }
+
+    /**
+     * Stores the cost per op of the empty benchmark loop as [mode].baseline and the cost of consuming each kind
+     * of value, returned by the benchmark method as [mode].return.[kind] and passed to Blackhole::consume as
+     * [mode].consume.[kind], already net of the baseline. Each one has the score error of the benchmark measuring
+     * it (the loop included) as [key].error.
+     */
+    public static Properties calibrate() throws IOException {
+        Properties calibration = new Properties();
+        for (BlackholeMode requested : BlackholeMode.values()) {
+            Path csv = Files.createTempFile("blackhole-" + requested, ".csv");
+            List<String> command = List.of(Benchmarks.java(), "-Djmh.blackhole.mode=" + requested,
+                    "-cp", System.getProperty("java.class.path"), "org.openjdk.jmh.Main", BlackholeCost.class.getName() + ".(baseline|return.*|consume.*)",
+                    "-rf", "csv", "-rff", csv.toString());
+            BlackholeMode mode = null;
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                for (String line = output.readLine(); line != null; line = output.readLine()) {
+                    System.out.println(line);
+                    BlackholeMode reported = BlackholeMode.fromOutputLine(line);
+                    mode = reported != null ? reported : mode;
+                }
+            }
+            try {
+                if (process.waitFor() != 0) {
+                    throw new IllegalStateException("The calibration of the " + requested + " blackhole mode failed");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (mode != requested) {
+                System.err.println("WARNING: the " + requested + " blackhole mode isn't available, JMH used " + mode);
+            }
+            Map<String, double[]> scores = readScores(csv);
+            Files.delete(csv);
+            if (mode == null || calibration.containsKey(mode + ".baseline")) {
+                continue;
+            }
+            double[] baseline = scores.get("baseline");
+            calibration.setProperty(mode + ".baseline", Double.toString(baseline[0]));
+            calibration.setProperty(mode + ".baseline.error", Double.toString(baseline[1]));
+            for (ValueKind kind : ValueKind.values()) {
+                if (kind != ValueKind.NONE) {
+                    for (String sink : List.of("return", "consume")) {
+                        double[] score = scores.get(sink + kind.capitalized());
+                        String key = mode + "." + sink + "." + kind;
+                        calibration.setProperty(key, Double.toString(Math.max(0, score[0] - baseline[0])));
+                        calibration.setProperty(key + ".error", Double.toString(score[1]));
+                    }
+                }
+            }
+        }
+        return calibration;
+    }
+
+    /**
+     * Prints each cost with its error: the one of a cost net of the baseline combines the errors of both benchmarks
+     */
+    private static void printCalibration(Properties calibration) {
+        new TreeMap<>(calibration).forEach((k, v) -> {
+            String key = (String) k;
+            if (key.endsWith(".error")) {
+                return;
+            }
+            double error = Double.parseDouble(calibration.getProperty(key + ".error"));
+            if (!key.endsWith(".baseline")) {
+                double baselineError = Double.parseDouble(calibration.getProperty(key.substring(0, key.indexOf('.')) + ".baseline.error"));
+                error = Math.hypot(error, baselineError);
+            }
+            double cost = Double.parseDouble((String) v);
+            System.out.printf("%-40s %10.3f ± %7.3f ns/op%s%n", key, cost, error, cost <= error ? "  (within the noise)" : "");
+        });
+    }
+
+    /**
+     * The score and score error of the JMH csv results, by benchmark method name:
+     * "Benchmark","Mode","Threads","Samples","Score","Score Error (99.9%)",...
+     */
+    private static Map<String, double[]> readScores(Path csv) throws IOException {
+        Map<String, double[]> scores = new TreeMap<>();
+        List<String> lines = Files.readAllLines(csv);
+        // the first line is the header
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> columns = csvColumns(line);
+            String benchmark = columns.get(0);
+            scores.put(benchmark.substring(benchmark.lastIndexOf('.') + 1),
+                    new double[] { Double.parseDouble(columns.get(4)), Double.parseDouble(columns.get(5)) });
+        }
+        return scores;
+    }
+
+    /**
+     * The columns of a csv line, unquoted: a quoted column (e.g. a String param) can contain commas and "" for a quote
+     */
+    private static List<String> csvColumns(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    public List<RunResult> subtract(String include) throws RunnerException {
+        ModeListener listener = new ModeListener();
+        List<RunResult> results = new ArrayList<>(new Runner(new OptionsBuilder()
+                .include(include)
+                .build(), OutputFormatFactory.createFormatInstance(new PrintStream(listener, true), VerboseMode.NORMAL)).run());
+        results.sort(RunResult.DEFAULT_SORT_COMPARATOR);
+        BlackholeMode mode = listener.mode;
+        if (mode == null) {
+            throw new IllegalStateException("The blackhole mode wasn't reported by the run");
+        }
+
+        System.out.println();
+        System.out.println("Infrastructure costs subtracted using the " + mode + " blackhole calibration");
+        System.out.printf("%-70s %12s %12s %10s %12s  %s%n", "Benchmark", "Score", "Overhead", "Error", "Corrected", "Units");
+        boolean noisy = false;
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            double score = result.getPrimaryResult().getScore();
+            String unit = result.getPrimaryResult().getScoreUnit();
+            if (params.getMode() != Mode.AverageTime && params.getMode() != Mode.SampleTime) {
+                System.out.printf("%-70s %12.3f %12s %10s %12s  %s%n", Benchmarks.label(params), score, "-", "-", "-", unit);
+                continue;
+            }
+            double perOp = TimeUnit.NANOSECONDS.convert(1, params.getTimeUnit()) * (double) params.getOpsPerInvocation();
+            double[] overhead = overheadNanos(mode, params);
+            if (overhead[0] <= overhead[1]) {
+                noisy = true;
+                System.out.printf("%-70s %12.3f %12.3f %10.3f %12s  %s%n", Benchmarks.label(params), score, overhead[0] / perOp, overhead[1] / perOp, "noise", unit);
+                continue;
+            }
+            System.out.printf("%-70s %12.3f %12.3f %10.3f %12.3f  %s%n", Benchmarks.label(params), score, overhead[0] / perOp, overhead[1] / perOp,
+                    score - overhead[0] / perOp, unit);
+        }
+        if (noisy) {
+            System.out.println("WARNING: some overheads are within the error of their calibration: those scores aren't corrected");
+        }
+        return results;
+    }
+
+    /**
+     * Forwards the output of the run to System.out, looking for the blackhole mode reported in it
+     */
+    private static final class ModeListener extends OutputStream {
+        private final StringBuilder line = new StringBuilder();
+        private BlackholeMode mode;
+
+        @Override
+        public void write(int b) {
+            System.out.write(b);
+            if (b == '\n') {
+                BlackholeMode reported = BlackholeMode.fromOutputLine(line.toString());
+                mode = reported != null ? reported : mode;
+                line.setLength(0);
+            } else {
+                line.append((char) b);
+            }
+        }
+
+        @Override
+        public void flush() {
+            System.out.flush();
+        }
+    }
+
+    /**
+     * The overhead in ns and its error, the one of the calibration benchmark whose score the overhead is:
+     * the baseline, or the one returning the same kind of value
+     */
+    private double[] overheadNanos(BlackholeMode mode, BenchmarkParams params) {
+        String key = mode + ".baseline";
+        double overhead = cost(key);
+        ValueKind kind = ValueKind.of(returnType(params.getBenchmark()));
+        if (kind != ValueKind.NONE) {
+            key = mode + ".return." + kind;
+            overhead += cost(key);
+        }
+        return new double[] { overhead, cost(key + ".error") };
+    }
+
+    private double cost(String key) {
+        String cost = calibration.getProperty(key);
+        if (cost == null) {
+            throw new IllegalStateException("Missing calibration for " + key + ": please run calibrate first");
+        }
+        return Double.parseDouble(cost);
+    }
+
+    private static Class<?> returnType(String benchmark) {
+        int methodDot = benchmark.lastIndexOf('.');
+        String methodName = benchmark.substring(methodDot + 1);
+        try {
+            for (Method method : Class.forName(benchmark.substring(0, methodDot)).getMethods()) {
+                if (method.getName().equals(methodName)) {
+                    return method.getReturnType();
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        throw new IllegalStateException("Cannot find benchmark method " + benchmark);
+    }
+}
@@ -0,0 +1,253 @@
+package org.jmhplayground.infra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.LinuxPerfNormProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * A benchmark that measures nothing still prints a very convincing number (see jmh1.DeadCodeElimination1).
+ *
+ * This checker briefly runs every matching benchmark for each value of its workload param, the int @Param named by
+ * its {@link Workload} annotation or with -param (e.g. x=1000 and x=100000), and verifies that the cost per op
+ * grows with the workload: if the work has been dead code eliminated
+ * the cost stays flat. The scaling exponent log(costRatio) / log(workloadRatio) is ~1 for a linear loop and ~0
+ * for a loop that has been optimised away; anything below minScaling (0.5 by default) is reported as suspect and
+ * fails the run. The same happens above maxScaling (1.5 by default): a cost growing much faster than the workload
+ * usually means that the JIT removed the work only for the smaller value (e.g. x=1000 compiled and eliminated
+ * while x=100000 still runs in OSR code), so raise it only for genuinely superlinear workloads.
+ * The benchmarks without a workload param, or whose values aren't at least 2 distinct positive ints, aren't run and
+ * are reported as not checked: the other int params (a call depth, a percentage, a delay...) aren't workloads.
+ *
+ * With -perfnorm the instructions/op counted by perf are compared instead of the time, which is immune to
+ * the timer resolution, otherwise the primary score (ns/op) is used.
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.DeadCodeChecker [-perfnorm] [-param x] [-minScaling 0.5] [-maxScaling 1.5] org.jmhplayground.jmh1.*
+ */
+public class DeadCodeChecker {
+
+    private static final String INSTRUCTIONS = "instructions";
+
+    private final String include;
+    private final boolean perfNorm;
+    private final String workloadParam;
+    private final double minScaling;
+    private final double maxScaling;
+
+    public DeadCodeChecker(String include, boolean perfNorm, String workloadParam, double minScaling, double maxScaling) {
+        this.include = include;
+        this.perfNorm = perfNorm;
+        this.workloadParam = workloadParam;
+        this.minScaling = minScaling;
+        this.maxScaling = maxScaling;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        boolean perfNorm = false;
+        String workloadParam = null;
+        double minScaling = 0.5;
+        double maxScaling = 1.5;
+        String include = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-perfnorm" -> perfNorm = true;
+                case "-param" -> workloadParam = args[++i];
+                case "-minScaling" -> minScaling = Double.parseDouble(args[++i]);
+                case "-maxScaling" -> maxScaling = Double.parseDouble(args[++i]);
+                default -> include = args[i];
+            }
+        }
+        if (include == null) {
+            System.err.println("Usage: DeadCodeChecker [-perfnorm] [-param name] [-minScaling exponent] [-maxScaling exponent] <benchmark regexp>");
+            System.exit(2);
+        }
+        List<Verdict> verdicts = new DeadCodeChecker(include, perfNorm, workloadParam, minScaling, maxScaling).check();
+        System.out.println();
+        System.out.printf("%-60s %-10s %16s %16s %9s  %s%n", "Benchmark", "Workload", "Cost(min)", "Cost(max)", "Scaling", "Verdict");
+        boolean failed = false;
+        for (Verdict verdict : verdicts) {
+            System.out.println(verdict);
+            failed |= verdict.suspect();
+        }
+        if (failed) {
+            System.err.println("Some benchmarks don't scale with their workload: they are likely measuring nothing!");
+            System.exit(1);
+        }
+    }
+
+    public List<Verdict> check() throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.milliseconds(100))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(100))
+                .forks(1);
+        if (perfNorm) {
+            options.addProfiler(LinuxPerfNormProfiler.class);
+        }
+        // benchmark -> workload param, only for the benchmarks which can be checked: the others aren't even run
+        Map<String, String> workloads = new LinkedHashMap<>();
+        List<Verdict> notChecked = new ArrayList<>();
+        for (BenchmarkListEntry benchmark : Benchmarks.find(include)) {
+            String param = workloadParam(benchmark);
+            String reason = unusable(benchmark, param);
+            if (reason != null) {
+                notChecked.add(Verdict.notChecked(shortName(benchmark.getUsername()), param, reason));
+            } else {
+                workloads.put(benchmark.getUsername(), param);
+                options.include(Benchmarks.exactly(benchmark));
+            }
+        }
+        List<Verdict> verdicts = new ArrayList<>();
+        if (!workloads.isEmpty()) {
+            verdicts.addAll(verdicts(new Runner(options.build()).run(), workloads));
+        }
+        verdicts.addAll(notChecked);
+        return verdicts;
+    }
+
+    /**
+     * The param selected with -param, or else the one declared by the {@link Workload} of the benchmark class
+     */
+    private String workloadParam(BenchmarkListEntry benchmark) {
+        if (workloadParam != null) {
+            return workloadParam;
+        }
+        try {
+            Workload workload = Class.forName(benchmark.getUserClassQName(), false, DeadCodeChecker.class.getClassLoader())
+                    .getAnnotation(Workload.class);
+            return workload == null ? null : workload.value();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Why the cost of the benchmark can't be expected to scale with the param, null if it can be
+     */
+    private static String unusable(BenchmarkListEntry benchmark, String param) {
+        if (param == null) {
+            return "no @Workload param";
+        }
+        String[] values = benchmark.getParams().orElse(Map.of()).get(param);
+        if (values == null) {
+            return "no param " + param;
+        }
+        Set<Long> distinct = new HashSet<>();
+        for (String value : values) {
+            // the ratio of the costs is compared to the one of the values: 0 or a negative value has no meaning
+            if (!isInteger(value) || Long.parseLong(value) <= 0) {
+                return param + "=" + value + " isn't a positive int";
+            }
+            distinct.add(Long.parseLong(value));
+        }
+        if (distinct.size() < 2) {
+            return "a single value of " + param;
+        }
+        return null;
+    }
+
+    private List<Verdict> verdicts(Collection<RunResult> results, Map<String, String> workloads) {
+        // benchmark + other params -> workload value -> cost per op
+        Map<String, TreeMap<Long, Double>> costs = new TreeMap<>();
+        Map<String, String> keyParams = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String param = workloads.get(params.getBenchmark());
+            String key = key(params, param);
+            keyParams.put(key, param);
+            costs.computeIfAbsent(key, k -> new TreeMap<>()).put(Long.parseLong(params.getParam(param)), cost(result));
+        }
+        List<Verdict> verdicts = new ArrayList<>();
+        costs.forEach((key, byValue) -> {
+            var min = byValue.firstEntry();
+            var max = byValue.lastEntry();
+            double scaling = Math.log(max.getValue() / min.getValue()) / Math.log((double) max.getKey() / min.getKey());
+            if (!Double.isFinite(scaling)) {
+                verdicts.add(Verdict.notChecked(key, keyParams.get(key), "cost " + min.getValue() + " and " + max.getValue() + " not comparable"));
+            } else {
+                verdicts.add(new Verdict(key, keyParams.get(key), min.getValue(), max.getValue(), scaling,
+                        scaling < minScaling || scaling > maxScaling, null));
+            }
+        });
+        return verdicts;
+    }
+
+    private static String key(BenchmarkParams params, String workloadParam) {
+        StringBuilder key = new StringBuilder(shortName(params.getBenchmark()));
+        for (String param : params.getParamsKeys()) {
+            if (!param.equals(workloadParam)) {
+                key.append(' ').append(param).append('=').append(params.getParam(param));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * org.jmhplayground.jmh1.DeadCodeElimination1.measureComputation -> DeadCodeElimination1.measureComputation
+     */
+    private static String shortName(String benchmark) {
+        int methodDot = benchmark.lastIndexOf('.');
+        return benchmark.substring(benchmark.lastIndexOf('.', methodDot - 1) + 1);
+    }
+
+    private double cost(RunResult result) {
+        if (perfNorm) {
+            Result instructions = result.getSecondaryResults().get(INSTRUCTIONS);
+            if (instructions != null) {
+                return instructions.getScore();
+            }
+        }
+        return result.getPrimaryResult().getScore();
+    }
+
+    private static boolean isInteger(String value) {
+        try {
+            Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The verdict of a benchmark, or why it wasn't checked
+     */
+    public record Verdict(String benchmark, String workloadParam, double minCost, double maxCost, double scaling, boolean suspect,
+                          String notChecked) {
+
+        static Verdict notChecked(String benchmark, String workloadParam, String reason) {
+            return new Verdict(benchmark, workloadParam, Double.NaN, Double.NaN, Double.NaN, false, reason);
+        }
+
+        @Override
+        public String toString() {
+            if (notChecked != null) {
+                return String.format("%-60s %-10s %16s %16s %9s  %s", benchmark, workloadParam == null ? "-" : workloadParam, "-", "-", "-",
+                        "NOT CHECKED (" + notChecked + ")");
+            }
+            return String.format("%-60s %-10s %16.3f %16.3f %9.2f  %s", benchmark, workloadParam, minCost, maxCost, scaling,
+                    suspect ? "SUSPECT (cost doesn't scale linearly with workload)" : "OK");
+        }
+    }
+}
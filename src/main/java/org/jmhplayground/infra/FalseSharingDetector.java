@@ -0,0 +1,259 @@
+package org.jmhplayground.infra;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.jmhplayground.infra.FieldAccesses.Access;
+import org.jmhplayground.infra.FieldAccesses.Call;
+import org.jmhplayground.infra.FieldAccesses.MethodCode;
+import org.jmhplayground.infra.ObjectLayout.FieldOffset;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+
+/**
+ * In a @Group benchmark each method runs in its own threads, sharing the @State(Scope.Group) and @State(Scope.Benchmark)
+ * objects: when a field written by the threads of a method is in the same cache line of a different field used by the
+ * threads of another method, they keep invalidating each other's copy of the line (see extra.FalseSharing).
+ *
+ * This detector follows the code of the methods of each matching group benchmark, and of the methods of this project
+ * they call, collecting the instance fields they read and write from the bytecode, and flags the pairs of different
+ * fields of the same object which may share a cache line ({@link ObjectLayout}) where at least one is written by a
+ * method and the other one is used by another method. The same field written by different methods is true sharing,
+ * and isn't reported. It's a static over approximation: calls through an interface are followed into all the
+ * implementations nested in the benchmark class, and accesses through VarHandles, Unsafe or lambdas aren't seen.
+ * Distinct objects, e.g. the @State(Scope.Thread) ones of different threads, can still be allocated next to each
+ * other, but their layout isn't known in advance.
+ *
+ * Only the @Group benchmarks (of at least 2 methods) are inspected, the others are skipped and counted: a benchmark
+ * run with -t N runs the same method in every thread, so its threads use the same fields of the shared
+ * @State(Scope.Benchmark) objects, which is true sharing, while the per thread slots of an array aren't fields.
+ *
+ * Run it with the JVM flags of the forks, which can change the layout: e.g. @Contended is ignored without
+ * -XX:-RestrictContended. Fails the run when anything is flagged, but for the fields of the classes matching the
+ * -expect regexp: the layouts packed on purpose, e.g. extra.FalseSharing.PackedIndices. Those must be flagged
+ * instead, which checks the detector against a known class on every run: a run flagging none of them fails too.
+ *
+ * Run with
+ * java -XX:-RestrictContended -cp target/benchmark.jar org.jmhplayground.infra.FalseSharingDetector org.jmhplayground.extra.*
+ * java -XX:-RestrictContended -cp target/benchmark.jar org.jmhplayground.infra.FalseSharingDetector -expect 'FalseSharing\$PackedIndices' org.jmhplayground.extra.*
+ */
+public class FalseSharingDetector {
+
+    private static final String PROJECT = "org/jmhplayground/";
+
+    public record Finding(String benchmark, FieldOffset written, String writer, FieldOffset other, String user, boolean otherWritten) {
+
+        /**
+         * If any of the 2 fields is declared by a class matching the pattern
+         */
+        public boolean in(Pattern classes) {
+            return classes.matcher(written.field().getDeclaringClass().getName()).find()
+                    || classes.matcher(other.field().getDeclaringClass().getName()).find();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s.%s (written by %s) and %s.%s (%s by %s) are %d bytes apart", benchmark,
+                    written.field().getDeclaringClass().getSimpleName(), written.field().getName(), writer,
+                    other.field().getDeclaringClass().getSimpleName(), other.field().getName(), otherWritten ? "written" : "read",
+                    user, ObjectLayout.gap(written, other));
+        }
+    }
+
+    private final ClassLoader loader = FalseSharingDetector.class.getClassLoader();
+    private final Map<String, FieldAccesses> classes = new HashMap<>();
+
+    public static void main(String[] args) {
+        if (args.length != 1 && (args.length != 3 || !args[0].equals("-expect"))) {
+            System.err.println("Usage: FalseSharingDetector [-expect <class regexp>] <benchmark regexp>");
+            System.exit(2);
+        }
+        Pattern expected = args.length == 3 ? Pattern.compile(args[1]) : null;
+        List<Finding> findings = new FalseSharingDetector().detect(args[args.length - 1]);
+        System.out.println();
+        boolean failed = false;
+        if (expected != null) {
+            List<Finding> packed = findings.stream().filter(f -> f.in(expected)).toList();
+            findings = findings.stream().filter(f -> !f.in(expected)).toList();
+            if (packed.isEmpty()) {
+                System.out.println("No fields of the classes matching " + expected + " flagged, but they were expected to be");
+                failed = true;
+            } else {
+                System.out.println("Expected, packed on purpose:");
+                packed.forEach(System.out::println);
+                System.out.println();
+            }
+        }
+        if (findings.isEmpty()) {
+            System.out.println("No other fields written by different threads sharing a cache line");
+        } else {
+            findings.forEach(System.out::println);
+            failed = true;
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    public List<Finding> detect(String include) {
+        List<Finding> findings = new ArrayList<>();
+        int skipped = 0;
+        for (BenchmarkListEntry benchmark : Benchmarks.find(include)) {
+            Collection<String> methods = benchmark.getThreadGroupLabels().orElse(List.of());
+            if (methods.size() < 2) {
+                skipped++;
+                continue;
+            }
+            Class<?> type = load(benchmark.getUserClassQName());
+            if (type == null) {
+                continue;
+            }
+            System.out.println("# " + benchmark.getUsername() + " " + methods);
+            Map<String, Set<Access>> accesses = new HashMap<>();
+            for (String method : methods) {
+                accesses.put(method, accesses(type, method));
+            }
+            for (String writer : methods) {
+                for (String user : methods) {
+                    if (!writer.equals(user)) {
+                        check(benchmark.getUsername(), writer, accesses.get(writer), user, accesses.get(user), findings);
+                    }
+                }
+            }
+        }
+        if (skipped > 0) {
+            System.out.println("# " + skipped + " benchmarks skipped, not @Group ones");
+        }
+        return findings;
+    }
+
+    private void check(String benchmark, String writer, Set<Access> written, String user, Set<Access> used,
+                       List<Finding> findings) {
+        for (Access write : written) {
+            if (!write.write()) {
+                continue;
+            }
+            for (Access use : used) {
+                if (use.field().equals(write.field()) && use.owner().equals(write.owner())) {
+                    continue;
+                }
+                // the most specific of the 2 owners is the object holding both fields
+                Class<?> writeOwner = load(write.owner().replace('/', '.'));
+                Class<?> useOwner = load(use.owner().replace('/', '.'));
+                Class<?> owner = writeOwner == null || useOwner == null ? null
+                        : writeOwner.isAssignableFrom(useOwner) ? useOwner : useOwner.isAssignableFrom(writeOwner) ? writeOwner : null;
+                if (owner == null) {
+                    continue;
+                }
+                FieldOffset a = ObjectLayout.offset(owner, write.field());
+                FieldOffset b = ObjectLayout.offset(owner, use.field());
+                if (a.field().equals(b.field()) || !ObjectLayout.mayShareCacheLine(a, b)) {
+                    continue;
+                }
+                // report each pair once, as written by both methods if it is
+                Finding finding = new Finding(benchmark, a, writer, b, user, use.write());
+                Finding same = findings.stream()
+                        .filter(f -> f.benchmark().equals(benchmark) && Set.of(f.written().field(), f.other().field()).equals(Set.of(a.field(), b.field())))
+                        .findFirst()
+                        .orElse(null);
+                if (same == null) {
+                    findings.add(finding);
+                } else if (!same.otherWritten() && use.write()) {
+                    findings.set(findings.indexOf(same), finding);
+                }
+            }
+        }
+    }
+
+    /**
+     * The field accesses of the benchmark method and of all the methods of this project it calls
+     */
+    private Set<Access> accesses(Class<?> type, String name) {
+        Method method = Arrays.stream(type.getMethods())
+                .filter(m -> m.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(type.getName() + " has no benchmark method " + name));
+        String descriptor = MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+        Set<Access> accesses = new LinkedHashSet<>();
+        Set<Call> visited = new HashSet<>();
+        Deque<Call> calls = new ArrayDeque<>();
+        calls.add(new Call(type.getName().replace('.', '/'), name, descriptor));
+        while (!calls.isEmpty()) {
+            Call call = calls.poll();
+            if (!call.owner().startsWith(PROJECT) || !visited.add(call)) {
+                continue;
+            }
+            for (String implementation : implementations(type, call.owner())) {
+                MethodCode code = find(implementation, call.name(), call.descriptor());
+                if (code != null) {
+                    accesses.addAll(code.accesses());
+                    calls.addAll(code.calls());
+                }
+            }
+        }
+        return accesses;
+    }
+
+    /**
+     * The owner of the call and the classes nested in the benchmark class extending or implementing it
+     */
+    private List<String> implementations(Class<?> type, String owner) {
+        List<String> implementations = new ArrayList<>(List.of(owner));
+        Class<?> ownerClass = load(owner.replace('/', '.'));
+        if (ownerClass != null) {
+            for (Class<?> nested : nested(type)) {
+                if (nested != ownerClass && ownerClass.isAssignableFrom(nested)) {
+                    implementations.add(nested.getName().replace('.', '/'));
+                }
+            }
+        }
+        return implementations;
+    }
+
+    private static List<Class<?>> nested(Class<?> type) {
+        List<Class<?>> nested = new ArrayList<>();
+        for (Class<?> c : type.getDeclaredClasses()) {
+            nested.add(c);
+            nested.addAll(nested(c));
+        }
+        return nested;
+    }
+
+    /**
+     * The method declared by the class or inherited from its superclasses in this project
+     */
+    private MethodCode find(String owner, String name, String descriptor) {
+        for (String c = owner; c != null && c.startsWith(PROJECT); ) {
+            FieldAccesses accesses = classes.computeIfAbsent(c, k -> FieldAccesses.of(k, loader));
+            if (accesses == null) {
+                return null;
+            }
+            MethodCode code = accesses.method(name, descriptor);
+            if (code != null) {
+                return code;
+            }
+            c = accesses.superName();
+        }
+        return null;
+    }
+
+    private Class<?> load(String name) {
+        try {
+            return Class.forName(name, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            System.err.println("Skipping " + name + ": " + e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.jmhplayground.infra;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The instance fields read and written, and the methods invoked, by each method of a class, straight from its
+ * bytecode (getfield, putfield and invoke* instructions): just enough of a class file reader for
+ * {@link FalseSharingDetector}. Accesses through VarHandles, Unsafe, reflection or lambdas aren't seen.
+ * The detector run with -expect checks it against a known class, e.g. the fields of extra.FalseSharing.PackedIndices
+ * written by its 2 benchmark groups.
+ */
+final class FieldAccesses {
+
+    record Access(String owner, String field, boolean write) {
+    }
+
+    record Call(String owner, String name, String descriptor) {
+    }
+
+    record MethodCode(String name, String descriptor, List<Access> accesses, List<Call> calls) {
+    }
+
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int TABLESWITCH = 0xaa;
+    private static final int LOOKUPSWITCH = 0xab;
+    private static final int WIDE = 0xc4;
+    private static final int IINC = 0x84;
+
+    /**
+     * The length of the operands of each opcode, -1 for the variable length ones
+     */
+    private static final int[] OPERANDS = new int[256];
+
+    static {
+        set(1, 0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a, 0xa9, 0xbc);
+        set(2, 0x11, 0x13, 0x14, IINC, 0xb2, 0xb3, GETFIELD, PUTFIELD, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC,
+                0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7);
+        for (int op = 0x99; op <= 0xa8; op++) {
+            OPERANDS[op] = 2;
+        }
+        set(3, 0xc5);
+        set(4, INVOKEINTERFACE, 0xba, 0xc8, 0xc9);
+        set(-1, TABLESWITCH, LOOKUPSWITCH, WIDE);
+    }
+
+    private static void set(int length, int... opcodes) {
+        for (int opcode : opcodes) {
+            OPERANDS[opcode] = length;
+        }
+    }
+
+    private final Map<String, MethodCode> methods = new HashMap<>();
+    private String superName;
+
+    private FieldAccesses() {
+    }
+
+    /**
+     * Reads the class file of the given class (internal name, e.g. java/lang/Object) from the class loader
+     */
+    static FieldAccesses of(String internalName, ClassLoader loader) {
+        try (InputStream in = loader.getResourceAsStream(internalName + ".class")) {
+            if (in == null) {
+                return null;
+            }
+            FieldAccesses accesses = new FieldAccesses();
+            accesses.read(new DataInputStream(in));
+            return accesses;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    MethodCode method(String name, String descriptor) {
+        return methods.get(name + descriptor);
+    }
+
+    String superName() {
+        return superName;
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        in.readInt();
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        Object[] pool = readConstantPool(in);
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        int superClass = in.readUnsignedShort();
+        superName = superClass == 0 ? null : utf8(pool, (Integer) pool[superClass]);
+        int interfaces = in.readUnsignedShort();
+        in.skipNBytes(2L * interfaces);
+        int fields = in.readUnsignedShort();
+        for (int i = 0; i < fields; i++) {
+            in.skipNBytes(6);
+            skipAttributes(in);
+        }
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            in.readUnsignedShort();
+            String name = utf8(pool, in.readUnsignedShort());
+            String descriptor = utf8(pool, in.readUnsignedShort());
+            MethodCode method = new MethodCode(name, descriptor, new ArrayList<>(), new ArrayList<>());
+            int attributes = in.readUnsignedShort();
+            for (int a = 0; a < attributes; a++) {
+                String attribute = utf8(pool, in.readUnsignedShort());
+                byte[] bytes = in.readNBytes(in.readInt());
+                if (attribute.equals("Code")) {
+                    ByteBuffer code = ByteBuffer.wrap(bytes);
+                    // max_stack and max_locals
+                    code.position(4);
+                    int length = code.getInt();
+                    scan(code.slice(8, length), pool, method);
+                }
+            }
+            methods.put(name + descriptor, method);
+        }
+    }
+
+    private static void scan(ByteBuffer code, Object[] pool, MethodCode method) {
+        int pc = 0;
+        while (pc < code.limit()) {
+            int opcode = code.get(pc) & 0xff;
+            switch (opcode) {
+                case GETFIELD, PUTFIELD -> {
+                    String[] ref = ref(pool, code.getShort(pc + 1) & 0xffff);
+                    method.accesses().add(new Access(ref[0], ref[1], opcode == PUTFIELD));
+                }
+                case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE -> {
+                    String[] ref = ref(pool, code.getShort(pc + 1) & 0xffff);
+                    method.calls().add(new Call(ref[0], ref[1], ref[2]));
+                }
+                default -> { }
+            }
+            pc += 1 + operands(code, pc, opcode);
+        }
+    }
+
+    private static int operands(ByteBuffer code, int pc, int opcode) {
+        int length = OPERANDS[opcode];
+        if (length >= 0) {
+            return length;
+        }
+        if (opcode == WIDE) {
+            return (code.get(pc + 1) & 0xff) == IINC ? 5 : 3;
+        }
+        // the switches are aligned to 4 bytes from the start of the code
+        int padding = 3 - (pc % 4);
+        int table = pc + 1 + padding;
+        if (opcode == TABLESWITCH) {
+            int low = code.getInt(table + 4);
+            int high = code.getInt(table + 8);
+            return padding + 12 + 4 * (high - low + 1);
+        }
+        int pairs = code.getInt(table + 4);
+        return padding + 8 + 8 * pairs;
+    }
+
+    /**
+     * Owner, name and descriptor of a field or method reference
+     */
+    private static String[] ref(Object[] pool, int index) {
+        int[] ref = (int[]) pool[index];
+        int[] nameAndType = (int[]) pool[ref[1]];
+        return new String[] { utf8(pool, (Integer) pool[ref[0]]), utf8(pool, nameAndType[0]), utf8(pool, nameAndType[1]) };
+    }
+
+    private static String utf8(Object[] pool, int index) {
+        return (String) pool[index];
+    }
+
+    /**
+     * Utf8 entries as String, Class ones as the Integer index of their name, references as int[] and the rest as null
+     */
+    private static Object[] readConstantPool(DataInputStream in) throws IOException {
+        Object[] pool = new Object[in.readUnsignedShort()];
+        for (int i = 1; i < pool.length; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> pool[i] = in.readUTF();
+                case 7 -> pool[i] = in.readUnsignedShort();
+                case 9, 10, 11, 12 -> pool[i] = new int[] { in.readUnsignedShort(), in.readUnsignedShort() };
+                case 8, 16, 19, 20 -> in.skipNBytes(2);
+                case 15 -> in.skipNBytes(3);
+                case 3, 4, 17, 18 -> in.skipNBytes(4);
+                case 5, 6 -> {
+                    // 8 bytes constants take 2 entries
+                    in.skipNBytes(8);
+                    i++;
+                }
+                default -> throw new IllegalStateException("Unknown constant pool tag " + tag);
+            }
+        }
+        return pool;
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            in.readUnsignedShort();
+            in.skipNBytes(in.readInt());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.jmhplayground.infra;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * Reports the share of the CPU time of the benchmark JVM spent by the GC threads in each measurement iteration, as
+ * gc.cpu.share (%) and gc.cpu.time (ms). JFR has it only for the stop the world collectors (jdk.GCCPUTime), while
+ * the cost of the concurrent ones is mostly in their concurrent threads: this reads the CPU time of every thread
+ * of the JVM from /proc, so it works only on Linux and with a granularity of a clock tick (usually 10 ms).
+ * The GC threads are recognized by name. The VM Thread runs the collections of the Serial GC (and drives the ones
+ * of the Parallel GC) but also every other safepoint operation, e.g. deoptimizations and thread dumps:
+ * it's counted only with those 2 collectors, where it's mostly GC, so their share includes a bit of safepoint work,
+ * while with the concurrent collectors it isn't counted at all.
+ *
+ * Run with
+ * -prof org.jmhplayground.infra.GcCpuProfiler
+ */
+public class GcCpuProfiler implements InternalProfiler {
+
+    private static final Path TASKS = Path.of("/proc/self/task");
+
+    private static final List<String> GC_THREADS = List.of(
+            "GC Thread", "G1 ", "Shenandoah", "ZWorker", "ZDriver", "ZDirector", "ZStat", "ZUnmapper", "ZUncommitter");
+
+    /**
+     * The collector names of the Serial GC (Copy, MarkSweepCompact) and of the Parallel GC (PS Scavenge, PS MarkSweep)
+     */
+    private static final List<String> VM_THREAD_COLLECTORS = List.of("Copy", "MarkSweepCompact", "PS Scavenge", "PS MarkSweep");
+
+    private final List<String> gcThreads = gcThreads();
+
+    private long gcTicksBefore;
+    private long processTicksBefore;
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        long[] ticks = ticks(gcThreads);
+        gcTicksBefore = ticks[0];
+        processTicksBefore = ticks[1];
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                       IterationResult result) {
+        if (iterationParams.getType() != IterationType.MEASUREMENT || !Files.isDirectory(TASKS)) {
+            return List.of();
+        }
+        long[] ticks = ticks(gcThreads);
+        long gcTicks = ticks[0] - gcTicksBefore;
+        long processTicks = ticks[1] - processTicksBefore;
+        // USER_HZ is 100 on all the mainstream architectures
+        return List.of(
+                new ScalarResult("gc.cpu.share", processTicks == 0 ? 0 : 100.0 * gcTicks / processTicks, "%", AggregationPolicy.AVG),
+                new ScalarResult("gc.cpu.time", gcTicks * 10.0, "ms", AggregationPolicy.SUM));
+    }
+
+    /**
+     * The name prefixes of the GC threads of the collector of this JVM
+     */
+    private static List<String> gcThreads() {
+        boolean stopTheWorld = ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .anyMatch(gc -> VM_THREAD_COLLECTORS.contains(gc.getName()));
+        if (!stopTheWorld) {
+            return GC_THREADS;
+        }
+        List<String> names = new ArrayList<>(GC_THREADS);
+        names.add("VM Thread");
+        return names;
+    }
+
+    /**
+     * The user + system clock ticks of the GC threads and of all the threads, the ones already terminated excluded
+     */
+    private static long[] ticks(List<String> gcThreads) {
+        long gc = 0;
+        long total = 0;
+        try (Stream<Path> tasks = Files.list(TASKS)) {
+            for (Path task : tasks.toList()) {
+                try {
+                    String stat = Files.readString(task.resolve("stat"));
+                    // the name in (...) can contain spaces: the fields to parse follow the last ')'
+                    String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                    // utime and stime are the 14th and 15th fields, the first 2 (pid and name) are already skipped
+                    long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+                    total += ticks;
+                    String name = Files.readString(task.resolve("comm")).trim();
+                    if (gcThreads.stream().anyMatch(name::startsWith)) {
+                        gc += ticks;
+                    }
+                } catch (IOException e) {
+                    // the thread terminated in the meanwhile
+                }
+            }
+        } catch (IOException e) {
+            return new long[2];
+        }
+        return new long[] { gc, total };
+    }
+
+    @Override
+    public String getDescription() {
+        return "Share of the JVM CPU time spent by the GC threads";
+    }
+}
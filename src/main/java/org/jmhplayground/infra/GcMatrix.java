@@ -0,0 +1,72 @@
+package org.jmhplayground.infra;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * A {@link JvmFlagMatrix} with the garbage collector as dimension: the selected benchmarks are run with each
+ * collector available in this JVM, profiled with {@link GcPauseProfiler} and {@link GcCpuProfiler}, and the score
+ * is printed next to the pause percentiles, the allocation stalls and the GC CPU share of every collector (which,
+ * for serial and parallel only, includes the VM Thread and so a bit of non GC safepoint work too).
+ * Any other option of {@link JvmFlagMatrix} can be used as well, e.g. -XX:MaxHeapSize=24m to override the heap size
+ * of the @Fork annotation (extra.JacksonParser needs a bit more heap for JFR). A collector which doesn't fit in the
+ * given heap makes its forks fail and it's reported as without results: e.g. ZGC runs out of memory for
+ * extra.JacksonParser with 24M, while the others don't.
+ *
+ * -gc serial,parallel,g1,zgc,shenandoah   the collectors to compare, all of them by default
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.GcMatrix -XX:MaxHeapSize=32m -f 1 org.jmhplayground.extra.JacksonParser.parseJson
+ */
+public class GcMatrix {
+
+    public static final Map<String, List<String>> GCS = new LinkedHashMap<>();
+
+    static {
+        GCS.put("serial", List.of("-XX:+UseSerialGC"));
+        GCS.put("parallel", List.of("-XX:+UseParallelGC"));
+        GCS.put("g1", List.of("-XX:+UseG1GC"));
+        // generational ZGC is the default from JDK 23, where the flag is deprecated (and obsolete from JDK 24)
+        GCS.put("zgc", Runtime.version().feature() < 23 ? List.of("-XX:+UseZGC", "-XX:+ZGenerational") : List.of("-XX:+UseZGC"));
+        GCS.put("shenandoah", List.of("-XX:+UseShenandoahGC"));
+    }
+
+    private static final List<String> METRICS = List.of("gc.pause.count", "gc.pause.p50", "gc.pause.p99", "gc.pause.max",
+            "gc.alloc.stall.time", "gc.alloc.requiringGC", "gc.cpu.share");
+
+    public static void main(String[] args) throws RunnerException {
+        Map<String, List<String>> gcs = GCS;
+        List<String> matrixArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-gc")) {
+                gcs = new LinkedHashMap<>();
+                for (String gc : args[++i].split(",")) {
+                    if (!GCS.containsKey(gc)) {
+                        throw new IllegalArgumentException("Unknown GC " + gc + ", available ones are " + GCS.keySet());
+                    }
+                    gcs.put(gc, GCS.get(gc));
+                }
+            } else {
+                matrixArgs.add(args[i]);
+            }
+        }
+        JvmFlagMatrix matrix = JvmFlagMatrix.parse(matrixArgs.toArray(String[]::new));
+        if (matrix == null) {
+            System.err.println("Usage: GcMatrix [-gc " + String.join(",", GCS.keySet()) + "] [JvmFlagMatrix options] <benchmark regexp>");
+            System.exit(2);
+        }
+        Map<String, List<RunResult>> results = matrix
+                .dimension(gcs)
+                .options(o -> o.addProfiler(GcPauseProfiler.class).addProfiler(GcCpuProfiler.class))
+                .run();
+        JvmFlagMatrix.printPivot(results, "Score", RunResult::getPrimaryResult);
+        for (String metric : METRICS) {
+            JvmFlagMatrix.printPivot(results, metric, run -> run.getSecondaryResults().get(metric));
+        }
+    }
+}
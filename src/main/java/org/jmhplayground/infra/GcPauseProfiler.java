@@ -0,0 +1,137 @@
+package org.jmhplayground.infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.BenchmarkResultMetaData;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * -prof gc reports how much is allocated and how many GCs happened, but not what the application paid for them.
+ * This profiler records the GC pauses and allocation stalls with JFR and reports, for the measurement iterations:
+ * - gc.pause.count, gc.pause.p50, gc.pause.p99, gc.pause.max and gc.pause.total: every stop the world pause, which
+ *   for the concurrent collectors (ZGC, Shenandoah) are the short pauses between the concurrent phases
+ * - gc.alloc.stall.count and gc.alloc.stall.time: application threads blocked waiting for ZGC to free memory
+ * - gc.alloc.requiringGC: allocations that failed and triggered a GC (all the other collectors)
+ * The CPU spent by the concurrent GC threads isn't a pause: see {@link GcCpuProfiler} for the GC CPU share.
+ *
+ * As for {@link JfrSummaryProfiler} JFR needs some heap for itself, so extra.JacksonParser must be run with at
+ * least -Xmx24M.
+ *
+ * Run with
+ * -prof org.jmhplayground.infra.GcPauseProfiler -prof org.jmhplayground.infra.GcCpuProfiler
+ */
+public class GcPauseProfiler implements ExternalProfiler {
+
+    private static final String SETTINGS = "settings=none,+jdk.GCPhasePause#enabled=true,+jdk.GCPhasePause#threshold=0ms,"
+            + "+jdk.ZAllocationStall#enabled=true,+jdk.ZAllocationStall#threshold=0ms,+jdk.AllocationRequiringGC#enabled=true";
+
+    private Path recording;
+
+    @Override
+    public Collection<String> addJVMInvokeOptions(BenchmarkParams params) {
+        return List.of();
+    }
+
+    @Override
+    public Collection<String> addJVMOptions(BenchmarkParams params) {
+        try {
+            recording = Files.createTempFile("gc-pauses", ".jfr");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return List.of("-XX:StartFlightRecording:" + SETTINGS + ",filename=" + recording.toAbsolutePath());
+    }
+
+    @Override
+    public void beforeTrial(BenchmarkParams params) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterTrial(BenchmarkResult br, long pid, File stdOut, File stdErr) {
+        BenchmarkResultMetaData metadata = br.getMetadata();
+        if (metadata == null || !Files.exists(recording)) {
+            return List.of();
+        }
+        Instant from = Instant.ofEpochMilli(metadata.getMeasurementTime());
+        Instant to = Instant.ofEpochMilli(metadata.getStopTime());
+        List<Duration> pauses = new ArrayList<>();
+        int stalls = 0;
+        Duration stallTime = Duration.ZERO;
+        int requiringGC = 0;
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (event.getStartTime().isBefore(from) || event.getStartTime().isAfter(to)) {
+                    continue;
+                }
+                switch (event.getEventType().getName()) {
+                    case "jdk.GCPhasePause" -> pauses.add(event.getDuration());
+                    case "jdk.ZAllocationStall" -> {
+                        stalls++;
+                        stallTime = stallTime.plus(event.getDuration());
+                    }
+                    case "jdk.AllocationRequiringGC" -> requiringGC++;
+                    default -> { }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            recording.toFile().delete();
+        }
+
+        double[] millis = pauses.stream().mapToDouble(d -> d.toNanos() / 1e6).sorted().toArray();
+        return List.of(
+                new ScalarResult("gc.pause.count", millis.length, "#", AggregationPolicy.AVG),
+                new ScalarResult("gc.pause.p50", percentile(millis, 0.5), "ms", AggregationPolicy.AVG),
+                new ScalarResult("gc.pause.p99", percentile(millis, 0.99), "ms", AggregationPolicy.AVG),
+                new ScalarResult("gc.pause.max", percentile(millis, 1), "ms", AggregationPolicy.MAX),
+                new ScalarResult("gc.pause.total", Arrays.stream(millis).sum(), "ms", AggregationPolicy.AVG),
+                new ScalarResult("gc.alloc.stall.count", stalls, "#", AggregationPolicy.AVG),
+                new ScalarResult("gc.alloc.stall.time", stallTime.toNanos() / 1e6, "ms", AggregationPolicy.AVG),
+                new ScalarResult("gc.alloc.requiringGC", requiringGC, "#", AggregationPolicy.AVG));
+    }
+
+    /**
+     * Nearest rank percentile of the sorted values, 0 without values
+     */
+    private static double percentile(double[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    @Override
+    public boolean allowPrintOut() {
+        return true;
+    }
+
+    @Override
+    public boolean allowPrintErr() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "GC pause percentiles and allocation stalls, from JFR GC events";
+    }
+}
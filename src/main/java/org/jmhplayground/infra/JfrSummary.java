@@ -0,0 +1,310 @@
+package org.jmhplayground.infra;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * A compact, human readable digest of one or more JFR recordings of the same benchmark: allocation rate by site,
+ * hot methods, GC pauses, lock contention and safepoints. It is what {@link JfrSummaryProfiler} writes next to each
+ * recording, but it can also be run on the recordings already collected, e.g. in the jfr directory:
+ *
+ * java -cp target/benchmark.jar org.jmhplayground.infra.JfrSummary jfr/org.jmhplayground.jmh3.CpuScaling.consumeCpu1-Throughput-noisyNeighbors-0-work-10/profile.jfr
+ */
+public class JfrSummary {
+
+    private static final int TOP = 10;
+
+    private int recordings;
+    private Duration elapsed = Duration.ZERO;
+
+    private long allocatedBytes;
+    private final Map<String, Long> allocationBySite = new HashMap<>();
+
+    private long executionSamples;
+    private final Map<String, Long> samplesByMethod = new HashMap<>();
+
+    private final Map<String, Stat> gcByName = new HashMap<>();
+    private final Stat gcPauses = new Stat();
+
+    private final Map<String, Stat> monitorsByClass = new HashMap<>();
+    private final Map<String, Stat> parksByClass = new HashMap<>();
+
+    private final Stat safepoints = new Stat();
+    private final Map<String, Stat> safepointsByOperation = new HashMap<>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JfrSummary <recording.jfr>...");
+            System.exit(2);
+        }
+        JfrSummary summary = new JfrSummary();
+        for (String file : args) {
+            summary.read(Path.of(file), Instant.MIN, Instant.MAX);
+        }
+        PrintWriter out = new PrintWriter(System.out);
+        summary.write(out);
+        out.flush();
+    }
+
+    /**
+     * Adds the events of the recording started in the [from, to] interval, e.g. the measurement iterations only
+     */
+    public JfrSummary read(Path recording, Instant from, Instant to) throws IOException {
+        Instant first = null;
+        Instant last = null;
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                Instant start = event.getStartTime();
+                if (start.isBefore(from) || start.isAfter(to)) {
+                    continue;
+                }
+                if (first == null || start.isBefore(first)) {
+                    first = start;
+                }
+                if (last == null || event.getEndTime().isAfter(last)) {
+                    last = event.getEndTime();
+                }
+                accept(event);
+            }
+        }
+        recordings++;
+        if (first != null) {
+            elapsed = elapsed.plus(Duration.between(first, last));
+        }
+        return this;
+    }
+
+    /**
+     * Merges the summary of another recording (e.g. another fork of the same benchmark) into this one
+     */
+    public JfrSummary add(JfrSummary other) {
+        recordings += other.recordings;
+        elapsed = elapsed.plus(other.elapsed);
+        allocatedBytes += other.allocatedBytes;
+        other.allocationBySite.forEach((k, v) -> allocationBySite.merge(k, v, Long::sum));
+        executionSamples += other.executionSamples;
+        other.samplesByMethod.forEach((k, v) -> samplesByMethod.merge(k, v, Long::sum));
+        other.gcByName.forEach((k, v) -> gcByName.computeIfAbsent(k, n -> new Stat()).add(v));
+        gcPauses.add(other.gcPauses);
+        other.monitorsByClass.forEach((k, v) -> monitorsByClass.computeIfAbsent(k, n -> new Stat()).add(v));
+        other.parksByClass.forEach((k, v) -> parksByClass.computeIfAbsent(k, n -> new Stat()).add(v));
+        safepoints.add(other.safepoints);
+        other.safepointsByOperation.forEach((k, v) -> safepointsByOperation.computeIfAbsent(k, n -> new Stat()).add(v));
+        return this;
+    }
+
+    private void accept(RecordedEvent event) {
+        switch (event.getEventType().getName()) {
+            case "jdk.ObjectAllocationSample" -> {
+                long weight = event.getLong("weight");
+                allocatedBytes += weight;
+                allocationBySite.merge(allocationSite(event), weight, Long::sum);
+            }
+            case "jdk.ExecutionSample" -> {
+                executionSamples++;
+                RecordedFrame top = topFrame(event.getStackTrace());
+                samplesByMethod.merge(top == null ? "<unknown>" : method(top), 1L, Long::sum);
+            }
+            case "jdk.GarbageCollection" -> {
+                Duration pause = event.getDuration("sumOfPauses");
+                gcByName.computeIfAbsent(event.getString("name"), k -> new Stat()).add(pause);
+            }
+            case "jdk.GCPhasePause" -> gcPauses.add(event.getDuration());
+            case "jdk.JavaMonitorEnter" ->
+                    monitorsByClass.computeIfAbsent(className(event.getClass("monitorClass")), k -> new Stat()).add(event.getDuration());
+            case "jdk.ThreadPark" ->
+                    parksByClass.computeIfAbsent(className(event.getClass("parkedClass")), k -> new Stat()).add(event.getDuration());
+            case "jdk.ExecuteVMOperation" -> {
+                if (event.getBoolean("safepoint")) {
+                    safepoints.add(event.getDuration());
+                    safepointsByOperation.computeIfAbsent(event.getString("operation"), k -> new Stat()).add(event.getDuration());
+                }
+            }
+            default -> { }
+        }
+    }
+
+    public double allocationRateMBPerSec() {
+        double seconds = elapsed().toNanos() / 1e9;
+        return seconds == 0 ? 0 : allocatedBytes / (1024.0 * 1024.0) / seconds;
+    }
+
+    public Duration gcPauseTime() {
+        return gcPauses.total;
+    }
+
+    public Duration safepointTime() {
+        return safepoints.total;
+    }
+
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    public void write(PrintWriter out) {
+        out.printf("Recordings: %d, summarised interval: %.3f s%n", recordings, elapsed.toNanos() / 1e9);
+
+        out.printf("%n== Allocation: %.1f MB sampled, %.1f MB/s%n", allocatedBytes / (1024.0 * 1024.0), allocationRateMBPerSec());
+        top(allocationBySite).forEach(e -> out.printf("%8.1f MB %6.2f%%  %s%n",
+                e.getValue() / (1024.0 * 1024.0), percent(e.getValue(), allocatedBytes), e.getKey()));
+
+        out.printf("%n== Hot methods: %d execution samples%n", executionSamples);
+        top(samplesByMethod).forEach(e -> out.printf("%8d    %6.2f%%  %s%n",
+                e.getValue(), percent(e.getValue(), executionSamples), e.getKey()));
+
+        out.printf("%n== GC: %d pauses, total %s, max %s%n", gcPauses.count, millis(gcPauses.total), millis(gcPauses.max));
+        gcByName.forEach((name, stat) -> out.printf("%8d collections, total pause %s, max pause %s  %s%n",
+                stat.count, millis(stat.total), millis(stat.max), name));
+
+        out.printf("%n== Lock contention%n");
+        writeStats(out, "monitor enter", monitorsByClass);
+        writeStats(out, "thread park", parksByClass);
+
+        out.printf("%n== Safepoints: %d, total %s, max %s%n", safepoints.count, millis(safepoints.total), millis(safepoints.max));
+        writeStats(out, "operation", safepointsByOperation);
+    }
+
+    private static void writeStats(PrintWriter out, String label, Map<String, Stat> stats) {
+        stats.entrySet().stream()
+                .sorted(Map.Entry.<String, Stat>comparingByValue(Comparator.comparing(s -> s.total)).reversed())
+                .limit(TOP)
+                .forEach(e -> out.printf("%8d %s, total %s, max %s  %s%n",
+                        e.getValue().count, label, millis(e.getValue().total), millis(e.getValue().max), e.getKey()));
+    }
+
+    /**
+     * The class of the allocated object and the first frame outside the JDK and JMH which allocated it,
+     * e.g. char[] @ com.fasterxml.jackson.core.util.BufferRecycler.calloc:145
+     */
+    public static String allocationSite(RecordedEvent event) {
+        return allocationSite(event, 1);
+    }
+
+    /**
+     * The class of the allocated object and up to depth frames outside the JDK and JMH which allocated it, e.g.
+     * char[] @ com.fasterxml.jackson.core.util.BufferRecycler.calloc:145 <- com.fasterxml.jackson.core.io.IOContext.allocTokenBuffer:236
+     */
+    public static String allocationSite(RecordedEvent event, int depth) {
+        String type = className(event.getClass("objectClass"));
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return type;
+        }
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        StringBuilder site = new StringBuilder(type);
+        int found = 0;
+        for (RecordedFrame frame : frames) {
+            if (found == depth) {
+                break;
+            }
+            if (frame.isJavaFrame() && !isInfrastructureFrame(frame)) {
+                site.append(found++ == 0 ? " @ " : " <- ").append(frame(frame));
+            }
+        }
+        if (found == 0 && !frames.isEmpty()) {
+            site.append(" @ ").append(frame(frames.get(0)));
+        }
+        return site.toString();
+    }
+
+    public static String frame(RecordedFrame frame) {
+        return frame.getLineNumber() > 0 ? method(frame) + ":" + frame.getLineNumber() : method(frame);
+    }
+
+    public static String method(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+    }
+
+    private static RecordedFrame topFrame(RecordedStackTrace stackTrace) {
+        return stackTrace == null || stackTrace.getFrames().isEmpty() ? null : stackTrace.getFrames().get(0);
+    }
+
+    /**
+     * Frames of the JDK and of the JMH harness (including the generated stubs) never identify an allocation site
+     */
+    private static boolean isInfrastructureFrame(RecordedFrame frame) {
+        String type = frame.getMethod().getType().getName();
+        return type.startsWith("java.") || type.startsWith("jdk.") || type.startsWith("sun.")
+                || type.startsWith("org.openjdk.jmh.") || type.contains(".jmh_generated.");
+    }
+
+    /**
+     * Array classes are recorded with their descriptor, e.g. [B, which is translated to byte[]
+     */
+    private static String className(RecordedClass recordedClass) {
+        if (recordedClass == null) {
+            return "<unknown>";
+        }
+        String name = recordedClass.getName();
+        int dimensions = 0;
+        while (name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions == 0) {
+            return name;
+        }
+        String element = switch (name.charAt(dimensions)) {
+            case 'Z' -> "boolean";
+            case 'B' -> "byte";
+            case 'C' -> "char";
+            case 'S' -> "short";
+            case 'I' -> "int";
+            case 'J' -> "long";
+            case 'F' -> "float";
+            case 'D' -> "double";
+            default -> name.substring(dimensions + 1, name.length() - 1);
+        };
+        return element + "[]".repeat(dimensions);
+    }
+
+    private static Stream<Map.Entry<String, Long>> top(Map<String, Long> counts) {
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(TOP);
+    }
+
+    private static double percent(long value, long total) {
+        return total == 0 ? 0 : 100.0 * value / total;
+    }
+
+    private static String millis(Duration duration) {
+        return String.format("%.3f ms", duration.toNanos() / 1e6);
+    }
+
+    private static final class Stat {
+        long count;
+        Duration total = Duration.ZERO;
+        Duration max = Duration.ZERO;
+
+        void add(Duration duration) {
+            count++;
+            total = total.plus(duration);
+            if (duration.compareTo(max) > 0) {
+                max = duration;
+            }
+        }
+
+        void add(Stat other) {
+            count += other.count;
+            total = total.plus(other.total);
+            if (other.max.compareTo(max) > 0) {
+                max = other.max;
+            }
+        }
+    }
+}
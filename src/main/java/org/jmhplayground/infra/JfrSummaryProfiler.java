@@ -0,0 +1,149 @@
+package org.jmhplayground.infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.BenchmarkResultMetaData;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Records every fork with JFR, using a low overhead event profile tuned for benchmarks, and streams the recording
+ * into a {@link JfrSummary} of the measurement iterations only (warmup is left out). After each fork it (re)writes
+ * [dir]/[benchmark id]/summary.txt, next to the profile-fork[N].jfr recordings, covering all the forks so far:
+ * a bad run can be diagnosed from this single file. Allocation rate, GC pause time and safepoint time are
+ * reported as secondary results too.
+ *
+ * Options (separated by ;)
+ * dir=[directory]      where recordings and summaries are written, target/jfr by default (not the tracked jfr
+ *                      directory, which holds the recordings committed with the repo)
+ * settings=[options]   the -XX:StartFlightRecording options, e.g. settings=profile,gc=detailed (add
+ *                      +jdk.ExecuteVMOperation#threshold=0ms to any of them to get the safepoints too)
+ *
+ * Beware that JFR needs a few MB of heap for itself: extra.JacksonParser runs out of memory with its -Xmx15M,
+ * so give it some more room with -jvmArgsAppend "-Xmx24M -XX:SoftRefLRUPolicyMSPerMB=1" when recording it.
+ *
+ * Run with
+ * -prof org.jmhplayground.infra.JfrSummaryProfiler
+ * -prof "org.jmhplayground.infra.JfrSummaryProfiler:dir=/tmp/jfr;settings=default,allocation-profiling=high"
+ */
+public class JfrSummaryProfiler implements ExternalProfiler {
+
+    /**
+     * The default JFR settings (~1% overhead) with more frequent execution and allocation samples
+     * and lock contention reported from 1 ms, so that short measurement iterations still get a meaningful summary.
+     * The default profile records only the VM operations longer than 10 ms, almost never a safepoint of a benchmark:
+     * all of them are recorded instead.
+     */
+    static final String DEFAULT_SETTINGS = "settings=default,method-profiling=high,allocation-profiling=medium,locking-threshold=1ms,"
+            + "+jdk.ExecuteVMOperation#threshold=0ms";
+
+    private final Path dir;
+    private final String settings;
+
+    private final Map<String, Integer> forks = new HashMap<>();
+    private final Map<String, JfrSummary> summaries = new HashMap<>();
+    private Path recording;
+
+    public JfrSummaryProfiler(String initLine) {
+        Map<String, String> options = options(initLine);
+        this.dir = Path.of(options.getOrDefault("dir", "target/jfr"));
+        this.settings = options.getOrDefault("settings", DEFAULT_SETTINGS);
+    }
+
+    public JfrSummaryProfiler() {
+        this("");
+    }
+
+    static Map<String, String> options(String initLine) {
+        Map<String, String> options = new HashMap<>();
+        for (String option : initLine.split(";")) {
+            int eq = option.indexOf('=');
+            if (eq > 0) {
+                options.put(option.substring(0, eq).trim(), option.substring(eq + 1).trim());
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public Collection<String> addJVMInvokeOptions(BenchmarkParams params) {
+        return List.of();
+    }
+
+    @Override
+    public Collection<String> addJVMOptions(BenchmarkParams params) {
+        int fork = forks.merge(params.id(), 1, Integer::sum);
+        if (fork == 1) {
+            summaries.put(params.id(), new JfrSummary());
+        }
+        recording = dir.resolve(params.id()).resolve("profile-fork" + fork + ".jfr");
+        return List.of("-XX:StartFlightRecording:" + settings + ",filename=" + recording.toAbsolutePath());
+    }
+
+    @Override
+    public void beforeTrial(BenchmarkParams params) {
+        try {
+            Files.createDirectories(recording.getParent());
+            Files.deleteIfExists(recording);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Collection<? extends Result> afterTrial(BenchmarkResult br, long pid, File stdOut, File stdErr) {
+        if (!Files.exists(recording)) {
+            return List.of();
+        }
+        BenchmarkParams params = br.getParams();
+        BenchmarkResultMetaData metadata = br.getMetadata();
+        Instant from = metadata == null ? Instant.MIN : Instant.ofEpochMilli(metadata.getMeasurementTime());
+        Instant to = metadata == null ? Instant.MAX : Instant.ofEpochMilli(metadata.getStopTime());
+        JfrSummary fork = new JfrSummary();
+        JfrSummary summary = summaries.get(params.id());
+        try {
+            fork.read(recording, from, to);
+            summary.add(fork);
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve(params.id()).resolve("summary.txt")))) {
+                out.println("Benchmark: " + params.id());
+                out.println("Score (last fork): " + br.getPrimaryResult());
+                summary.write(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return List.of(
+                new ScalarResult("jfr.alloc.rate", fork.allocationRateMBPerSec(), "MB/sec", AggregationPolicy.AVG),
+                new ScalarResult("jfr.gc.pause", fork.gcPauseTime().toNanos() / 1e6, "ms", AggregationPolicy.AVG),
+                new ScalarResult("jfr.safepoint", fork.safepointTime().toNanos() / 1e6, "ms", AggregationPolicy.AVG));
+    }
+
+    @Override
+    public boolean allowPrintOut() {
+        return true;
+    }
+
+    @Override
+    public boolean allowPrintErr() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "JFR recording of each fork summarised in a per-benchmark summary.txt";
+    }
+}
@@ -0,0 +1,132 @@
+package org.jmhplayground.infra;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Reports, for each iteration of the fork, how many methods of the benchmark code the JIT compiled or deoptimized,
+ * read from the -Xlog:jit+compilation log of the fork, which must be enabled on the given file: the JDK and JMH
+ * harness methods are left out. Used by {@link AdaptiveWarmup} to tell when the JIT is done with the benchmark.
+ *
+ * Run with
+ * -jvmArgsPrepend -Xlog:jit+compilation=debug:file=/tmp/jit.log -prof org.jmhplayground.infra.JitActivityProfiler:log=/tmp/jit.log
+ */
+public class JitActivityProfiler implements InternalProfiler {
+
+    public static final String COMPILATIONS = "jit.compilations";
+
+    private final Path log;
+    private JitLogTail tail;
+
+    public JitActivityProfiler(String initLine) {
+        String log = JfrSummaryProfiler.options(initLine).get("log");
+        if (log == null) {
+            throw new IllegalArgumentException("The log=[file] option is required: the file of -Xlog:jit+compilation=debug:file=[file]");
+        }
+        this.log = Path.of(log);
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                       IterationResult result) {
+        try {
+            if (tail == null) {
+                // the log of the fork is created by the JVM at startup, the earlier lines count for the first iteration
+                tail = new JitLogTail(Files.newBufferedReader(log));
+            }
+            return List.of(new ScalarResult(COMPILATIONS, benchmarkCompilations(tail), "#", AggregationPolicy.SUM));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "Compilations and deoptimizations of benchmark methods in each iteration";
+    }
+
+    /**
+     * Counts the compilations and deoptimizations of benchmark methods logged since the last call, e.g.
+     * [1.234s][debug][jit,compilation]  901   !   4       org.jmhplayground.jmh4.TypeProfilePollution::testWith (9 bytes)
+     */
+    private static int benchmarkCompilations(JitLogTail jit) throws IOException {
+        int compilations = 0;
+        String line;
+        while ((line = jit.nextLine()) != null) {
+            for (String token : line.split("\\s+")) {
+                int separator = token.indexOf("::");
+                if (separator > 0) {
+                    if (isBenchmarkCode(token.substring(0, separator))) {
+                        compilations++;
+                    }
+                    break;
+                }
+            }
+        }
+        return compilations;
+    }
+
+    private static boolean isBenchmarkCode(String className) {
+        if (className.contains(".jmh_generated.")) {
+            return true;
+        }
+        return !(className.startsWith("java.") || className.startsWith("jdk.") || className.startsWith("sun.")
+                || className.startsWith("org.openjdk.jmh."));
+    }
+
+    /**
+     * The lines appended to the log since the last read. The JVM may be writing a line while it is read: only the
+     * lines ended by a newline are returned, the rest is kept until the next read completes it.
+     */
+    private static final class JitLogTail {
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder pending = new StringBuilder();
+        private int position;
+        private int limit;
+
+        JitLogTail(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * The next complete line, or null when there is none yet
+         */
+        String nextLine() throws IOException {
+            while (true) {
+                while (position < limit) {
+                    char c = buffer[position++];
+                    if (c == '\n') {
+                        String line = pending.toString();
+                        pending.setLength(0);
+                        return line;
+                    }
+                    pending.append(c);
+                }
+                int read = reader.read(buffer);
+                if (read <= 0) {
+                    return null;
+                }
+                position = 0;
+                limit = read;
+            }
+        }
+    }
+}
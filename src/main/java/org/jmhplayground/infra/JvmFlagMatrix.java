@@ -0,0 +1,256 @@
+package org.jmhplayground.infra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Treats JVM options as a parameter dimension: the selected benchmarks are run for each combination of the given
+ * flag values (cross product), on top of the jvmArgsAppend of their @Fork annotation, and the scores are printed
+ * as a table with a row per benchmark/params and a column per combination.
+ * Combinations not accepted by the current JVM (e.g. Graal JIT on a JDK without JVMCI) are skipped.
+ *
+ * Dimensions
+ * -XX:Name=v1,v2,...   a flag and the values to try, e.g. -XX:MaxInlineLevel=4,9,15 or -XX:FreqInlineSize=100,325
+ * -XX:+-Name           a boolean flag, tried both enabled and disabled
+ * -jit c2,c1,graal     the JIT: c2 (default tiered compilation), c1 (-XX:TieredStopAtLevel=1), graal (JVMCI)
+ *
+ * JMH options: -f forks, -wi/-i warmup/measurement iterations, -w/-r their time, -p name=v1,v2 and -prof profiler
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.JvmFlagMatrix -XX:MaxInlineLevel=4,9,15 -XX:InlineSmallCode=1000,2500 -jit c2,graal -f 1 org.jmhplayground.jmh5.Inlining.isUppercase
+ */
+public class JvmFlagMatrix {
+
+    public static final Map<String, List<String>> JITS = Map.of(
+            "c2", List.of(),
+            "c1", List.of("-XX:TieredStopAtLevel=1"),
+            "graal", List.of("-XX:+UnlockExperimentalVMOptions", "-XX:+EnableJVMCI", "-XX:+UseJVMCICompiler"));
+
+    public record Combination(String label, List<String> jvmArgs) {
+    }
+
+    private final String include;
+    private final List<Map<String, List<String>>> dimensions = new ArrayList<>();
+    private Consumer<ChainedOptionsBuilder> options = options -> { };
+
+    public JvmFlagMatrix(String include) {
+        this.include = include;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        JvmFlagMatrix matrix;
+        try {
+            matrix = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            matrix = null;
+        }
+        if (matrix == null || matrix.dimensions.isEmpty()) {
+            System.err.println("Usage: JvmFlagMatrix [-XX:Name=v1,v2...] [-XX:+-Name] [-jit c2,c1,graal] [-f n] [-wi n] [-i n] [-w time] [-r time] [-p name=v1,v2] [-prof profiler] <benchmark regexp>");
+            System.exit(2);
+        }
+        printPivot(matrix.run(), "Score", RunResult::getPrimaryResult);
+    }
+
+    /**
+     * Parses the dimensions and the JMH options of the command line, returning null if the regexp is missing
+     */
+    public static JvmFlagMatrix parse(String[] args) {
+        String include = null;
+        List<Consumer<ChainedOptionsBuilder>> jmhOptions = new ArrayList<>();
+        List<String[]> dimensions = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("-XX:") || arg.equals("-jit")) {
+                dimensions.add(arg.equals("-jit") ? new String[] { arg, args[++i] } : new String[] { arg });
+                continue;
+            }
+            switch (arg) {
+                case "-f" -> {
+                    int forks = Integer.parseInt(args[++i]);
+                    jmhOptions.add(o -> o.forks(forks));
+                }
+                case "-wi" -> {
+                    int iterations = Integer.parseInt(args[++i]);
+                    jmhOptions.add(o -> o.warmupIterations(iterations));
+                }
+                case "-i" -> {
+                    int iterations = Integer.parseInt(args[++i]);
+                    jmhOptions.add(o -> o.measurementIterations(iterations));
+                }
+                case "-w" -> {
+                    TimeValue time = TimeValue.fromString(args[++i]);
+                    jmhOptions.add(o -> o.warmupTime(time));
+                }
+                case "-r" -> {
+                    TimeValue time = TimeValue.fromString(args[++i]);
+                    jmhOptions.add(o -> o.measurementTime(time));
+                }
+                case "-p" -> {
+                    String[] param = args[++i].split("=", 2);
+                    jmhOptions.add(o -> o.param(param[0], param[1].split(",")));
+                }
+                case "-prof" -> {
+                    String profiler = args[++i];
+                    jmhOptions.add(o -> o.addProfiler(profiler));
+                }
+                default -> include = arg;
+            }
+        }
+        if (include == null) {
+            return null;
+        }
+        JvmFlagMatrix matrix = new JvmFlagMatrix(include);
+        for (String[] dimension : dimensions) {
+            if (dimension[0].equals("-jit")) {
+                Map<String, List<String>> jits = new LinkedHashMap<>();
+                for (String jit : dimension[1].split(",")) {
+                    if (!JITS.containsKey(jit)) {
+                        throw new IllegalArgumentException("Unknown JIT " + jit + ", available ones are " + JITS.keySet());
+                    }
+                    jits.put(jit, JITS.get(jit));
+                }
+                matrix.dimension(jits);
+            } else {
+                matrix.flag(dimension[0]);
+            }
+        }
+        return matrix.options(o -> jmhOptions.forEach(option -> option.accept(o)));
+    }
+
+    /**
+     * Adds a dimension from its command line form: -XX:Name=v1,v2 or -XX:+-Name
+     */
+    public JvmFlagMatrix flag(String flag) {
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        if (flag.startsWith("-XX:+-")) {
+            String name = flag.substring("-XX:+-".length());
+            values.put("+" + name, List.of("-XX:+" + name));
+            values.put("-" + name, List.of("-XX:-" + name));
+        } else {
+            int eq = flag.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Bad flag dimension " + flag + ", expected -XX:Name=v1,v2 or -XX:+-Name");
+            }
+            String name = flag.substring("-XX:".length(), eq);
+            for (String value : flag.substring(eq + 1).split(",")) {
+                values.put(name + "=" + value, List.of("-XX:" + name + "=" + value));
+            }
+        }
+        return dimension(values);
+    }
+
+    /**
+     * Adds a dimension: each value has a label, used in the result table, and the JVM options it stands for
+     */
+    public JvmFlagMatrix dimension(Map<String, List<String>> values) {
+        dimensions.add(values);
+        return this;
+    }
+
+    /**
+     * Customizes the JMH options of each run, e.g. to add a profiler, after the customizations already given
+     */
+    public JvmFlagMatrix options(Consumer<ChainedOptionsBuilder> options) {
+        this.options = this.options.andThen(options);
+        return this;
+    }
+
+    public List<Combination> combinations() {
+        List<Combination> combinations = List.of(new Combination("", List.of()));
+        for (Map<String, List<String>> dimension : dimensions) {
+            List<Combination> next = new ArrayList<>();
+            for (Combination combination : combinations) {
+                dimension.forEach((label, args) -> {
+                    List<String> jvmArgs = new ArrayList<>(combination.jvmArgs());
+                    jvmArgs.addAll(args);
+                    next.add(new Combination(combination.label().isEmpty() ? label : combination.label() + " " + label, jvmArgs));
+                });
+            }
+            combinations = next;
+        }
+        return combinations;
+    }
+
+    /**
+     * Runs the benchmarks for each combination the JVM accepts, returning the results by combination label
+     */
+    public Map<String, List<RunResult>> run() throws RunnerException {
+        Collection<BenchmarkListEntry> benchmarks = Benchmarks.find(include);
+        Map<String, List<RunResult>> results = new LinkedHashMap<>();
+        for (Combination combination : combinations()) {
+            if (!Benchmarks.jvmAccepts(combination.jvmArgs())) {
+                System.err.println("Skipping " + combination.label() + ": not supported by this JVM " + combination.jvmArgs());
+                continue;
+            }
+            List<RunResult> combinationResults = new ArrayList<>();
+            for (BenchmarkListEntry benchmark : benchmarks) {
+                ChainedOptionsBuilder builder = new OptionsBuilder()
+                        .include(Benchmarks.exactly(benchmark))
+                        .jvmArgsAppend(Benchmarks.jvmArgsAppend(benchmark, combination.jvmArgs()));
+                options.accept(builder);
+                combinationResults.addAll(new Runner(builder.build()).run());
+            }
+            if (combinationResults.isEmpty()) {
+                // e.g. -XX:+UseJVMCICompiler starts on a JDK built with JVMCI but without the Graal compiler
+                System.err.println("No results for " + combination.label() + ": the forks failed with " + combination.jvmArgs());
+                continue;
+            }
+            combinationResults.sort(RunResult.DEFAULT_SORT_COMPARATOR);
+            results.put(combination.label(), combinationResults);
+        }
+        return results;
+    }
+
+    /**
+     * Prints a table with a row per benchmark/params and a column per combination of the given (primary or
+     * secondary) result, which can be null when missing
+     */
+    public static void printPivot(Map<String, List<RunResult>> results, String title, Function<RunResult, Result> metric) {
+        Map<String, Map<String, Double>> rows = new LinkedHashMap<>();
+        Map<String, String> units = new LinkedHashMap<>();
+        results.forEach((combination, runs) -> runs.forEach(run -> {
+            String row = Benchmarks.label(run.getParams());
+            Map<String, Double> values = rows.computeIfAbsent(row, k -> new LinkedHashMap<>());
+            Result result = metric.apply(run);
+            if (result != null) {
+                values.put(combination, result.getScore());
+                units.putIfAbsent(row, result.getScoreUnit());
+            }
+        }));
+        int rowWidth = Math.max(title.length(), rows.keySet().stream().mapToInt(String::length).max().orElse(0));
+        List<Integer> widths = results.keySet().stream().map(c -> Math.max(12, c.length())).toList();
+
+        System.out.println();
+        StringBuilder header = new StringBuilder(String.format("%-" + rowWidth + "s", title));
+        int column = 0;
+        for (String combination : results.keySet()) {
+            header.append("  ").append(String.format("%" + widths.get(column++) + "s", combination));
+        }
+        System.out.println(header.append("  Units"));
+        rows.forEach((row, values) -> {
+            StringBuilder line = new StringBuilder(String.format("%-" + rowWidth + "s", row));
+            int c = 0;
+            for (String combination : results.keySet()) {
+                Double value = values.get(combination);
+                String cell = value == null ? "-" : String.format("%.3f", value);
+                line.append("  ").append(String.format("%" + widths.get(c++) + "s", cell));
+            }
+            System.out.println(line.append("  ").append(units.getOrDefault(row, "")));
+        });
+    }
+}
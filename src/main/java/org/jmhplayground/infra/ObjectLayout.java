@@ -0,0 +1,144 @@
+package org.jmhplayground.infra;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The offsets of the instance fields of a class as laid out by this JVM, superclasses included: the JVM is free to
+ * reorder the fields (and to fill the gaps of the superclasses with the ones of the subclasses), so the source order
+ * says nothing about which fields end up close to each other.
+ * Only the offsets are known, not where the object starts: two fields may share a cache line whenever there are less
+ * than a cache line (-DcacheLine=64 bytes by default) between them, depending on where the object is allocated.
+ * The offsets are the ones of sun.misc.Unsafe, looked up reflectively: javac warns about every reference to it in
+ * the source, with a warning that no @SuppressWarnings can silence.
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.ObjectLayout 'org.jmhplayground.extra.FalseSharing$PackedIndices'
+ */
+public final class ObjectLayout {
+
+    public static final int CACHE_LINE = Integer.getInteger("cacheLine", 64);
+
+    private static final MethodHandle OBJECT_FIELD_OFFSET;
+    private static final int REFERENCE_SIZE;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            OBJECT_FIELD_OFFSET = lookup.findVirtual(unsafeClass, "objectFieldOffset", MethodType.methodType(long.class, Field.class))
+                    .bindTo(unsafe);
+            // 4 with compressed oops
+            REFERENCE_SIZE = (int) lookup.findVirtual(unsafeClass, "arrayIndexScale", MethodType.methodType(int.class, Class.class))
+                    .invoke(unsafe, Object[].class);
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public record FieldOffset(Field field, long offset, int size) {
+
+        public long end() {
+            return offset + size;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%6d %4d  %s.%s %s", offset, size, field.getDeclaringClass().getSimpleName(), field.getName(),
+                    field.getType().getSimpleName());
+        }
+    }
+
+    private ObjectLayout() {
+    }
+
+    /**
+     * The instance fields of the class and of its superclasses, by offset
+     */
+    public static List<FieldOffset> fields(Class<?> type) {
+        List<FieldOffset> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    fields.add(offset(field));
+                }
+            }
+        }
+        fields.sort(Comparator.comparingLong(FieldOffset::offset));
+        return fields;
+    }
+
+    public static FieldOffset offset(Field field) {
+        try {
+            return new FieldOffset(field, (long) OBJECT_FIELD_OFFSET.invokeExact(field), size(field.getType()));
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static FieldOffset offset(Class<?> type, String name) {
+        return fields(type).stream()
+                .filter(f -> f.field().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(type.getName() + " has no field " + name));
+    }
+
+    private static int size(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE_SIZE;
+    }
+
+    /**
+     * The bytes between the 2 fields, 0 when they're contiguous
+     */
+    public static long gap(FieldOffset a, FieldOffset b) {
+        return a.offset() < b.offset() ? b.offset() - a.end() : a.offset() - b.end();
+    }
+
+    /**
+     * Whether the 2 fields may share a cache line for some alignment of the object
+     */
+    public static boolean mayShareCacheLine(FieldOffset a, FieldOffset b) {
+        // the last byte of the first one and the first byte of the second one are at gap + 1 bytes from each other
+        return gap(a, b) + 1 < CACHE_LINE;
+    }
+
+    public static void print(Class<?> type) {
+        System.out.println(type.getName() + ":");
+        System.out.printf("%6s %4s  %s%n", "Offset", "Size", "Field");
+        for (FieldOffset field : fields(type)) {
+            System.out.println(field);
+        }
+    }
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        if (args.length == 0) {
+            System.err.println("Usage: ObjectLayout <class name>...");
+            System.exit(2);
+        }
+        for (String name : args) {
+            print(Class.forName(name));
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.jmhplayground.infra;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * Reports what the {@link PerfCounters} regions counted in each measurement iteration, as perf.&lt;event&gt; per
+ * region: when every op of the benchmark is a region, as in jmh6.CountedRegions, this is the count per op of the
+ * measured code only. perf.regions is the number of regions per iteration, a sanity check that they're actually run.
+ * The software fallbacks of PerfCounters (task-clock, cpu-time) can't resolve a single region, whose count would be
+ * mostly the one of the syscalls reading them: they're reported as perf.&lt;event&gt;.iteration, the ns of all the
+ * regions of the iteration with the reads included, and never per op.
+ * Nothing is reported by the benchmarks without regions, and their forks don't need --enable-preview: this only
+ * reads {@link PerfCountersTotals}, never loading PerfCounters.
+ *
+ * Run with
+ * -prof org.jmhplayground.infra.PerfCountersProfiler
+ */
+public class PerfCountersProfiler implements InternalProfiler {
+
+    private Map<String, Long> before;
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        before = PerfCountersTotals.totals();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                       IterationResult result) {
+        Map<String, Long> after = PerfCountersTotals.totals();
+        long regions = after.get("regions") - before.get("regions");
+        if (iterationParams.getType() != IterationType.MEASUREMENT || regions == 0) {
+            return List.of();
+        }
+        List<Result> results = new ArrayList<>();
+        after.forEach((event, total) -> {
+            if (event.equals("regions")) {
+                return;
+            }
+            double delta = total - before.getOrDefault(event, 0L);
+            if (PerfCountersTotals.isPerRegion(event)) {
+                // the calibrated overhead is a minimum, a region can be slightly cheaper than it but not an average
+                results.add(new ScalarResult("perf." + event, Math.max(0, delta / regions), "#/op", AggregationPolicy.AVG));
+            } else {
+                // a software clock, in ns, reads included: meaningful only summed over all the regions of the iteration
+                results.add(new ScalarResult("perf." + event + ".iteration", Math.max(0, delta), "ns", AggregationPolicy.AVG));
+            }
+        });
+        results.add(new ScalarResult("perf.regions", regions, "#", AggregationPolicy.AVG));
+        return results;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Hardware counters of the PerfCounters regions, per region";
+    }
+}
@@ -0,0 +1,89 @@
+package org.jmhplayground.infra;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The totals of the regions of all the {@link PerfCounters} of the JVM, opened or already closed. They're not in
+ * PerfCounters because it uses the FFM API, a preview in Java 21, and so it can only be loaded with --enable-preview:
+ * {@link PerfCountersProfiler} reads these in the forks of any benchmark, the ones run without it as well.
+ */
+public final class PerfCountersTotals {
+
+    /**
+     * The totals of the regions of a single PerfCounters, written only by its thread
+     */
+    static final class Counts {
+        final List<String> events;
+        final AtomicLongArray totals;
+        final AtomicLong regions = new AtomicLong();
+
+        private Counts(List<String> events) {
+            this.events = events;
+            this.totals = new AtomicLongArray(events.size());
+        }
+    }
+
+    private static final Set<Counts> OPEN = ConcurrentHashMap.newKeySet();
+    private static final Set<String> NOT_PER_REGION = ConcurrentHashMap.newKeySet();
+    private static final Map<String, AtomicLong> CLOSED = new ConcurrentHashMap<>();
+    private static final AtomicLong CLOSED_REGIONS = new AtomicLong();
+
+    private PerfCountersTotals() {
+    }
+
+    /**
+     * The counts of new counters of the given events, perRegion when they can resolve a single region
+     */
+    static Counts open(List<String> events, boolean perRegion) {
+        if (!perRegion) {
+            NOT_PER_REGION.addAll(events);
+        }
+        Counts counts = new Counts(events);
+        OPEN.add(counts);
+        return counts;
+    }
+
+    /**
+     * Moves the counts to the totals of the closed counters, false if already closed
+     */
+    static boolean close(Counts counts) {
+        if (!OPEN.remove(counts)) {
+            return false;
+        }
+        for (int i = 0; i < counts.events.size(); i++) {
+            CLOSED.computeIfAbsent(counts.events.get(i), e -> new AtomicLong()).addAndGet(counts.totals.get(i));
+        }
+        CLOSED_REGIONS.addAndGet(counts.regions.get());
+        return true;
+    }
+
+    /**
+     * Whether the event can resolve a single region, as the hardware counters do, unlike the software clocks
+     */
+    public static boolean isPerRegion(String event) {
+        return !NOT_PER_REGION.contains(event);
+    }
+
+    /**
+     * The totals of all the regions of all the counters, opened or already closed, with the number of regions
+     */
+    public static Map<String, Long> totals() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        long regions = CLOSED_REGIONS.get();
+        CLOSED.forEach((event, total) -> totals.put(event, total.get()));
+        for (Counts counts : OPEN) {
+            for (int i = 0; i < counts.events.size(); i++) {
+                totals.merge(counts.events.get(i), counts.totals.getAcquire(i), Long::sum);
+            }
+            regions += counts.regions.getAcquire();
+        }
+        totals.put("regions", regions);
+        return totals;
+    }
+}
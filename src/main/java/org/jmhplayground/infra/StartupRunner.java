@@ -0,0 +1,234 @@
+package org.jmhplayground.infra;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * All the other benchmarks measure the steady state after several warmup iterations, while a freshly started JVM
+ * (e.g. an autoscaled pod) runs in the interpreter and C1 for a while, with classes still to be loaded and linked.
+ * This runs the selected benchmarks as SingleShotTime with no warmup and reports, for each class data sharing mode:
+ * - First: the time of the first iteration, i.e. of the first op with the default batch size of 1
+ * - Uptime: how long after the JVM start the first iteration completed, so including JVM boot and class loading
+ * - Peak: the median time of the last 10% of the iterations
+ * - To peak: the time spent in the iterations before the rolling median gets within the tolerance of the peak
+ *   (harness time between iterations excluded) and how many iterations it took
+ *
+ * Modes
+ * default   the JDK default CDS archive only
+ * appcds    a dynamic AppCDS archive (-XX:ArchiveClassesAtExit) created by a training run of the same benchmark
+ * aot       the AOT cache of JEP 483 (-XX:AOTMode=record/create), available on JDK 24+ and skipped otherwise
+ *
+ * The archives are generated for each benchmark method in target/startup, by a training fork running the same
+ * iterations: with many params the archive is the one of the last params, but the loaded classes are the same.
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.StartupRunner -p morphism=MEGA -p job=0 "org.jmhplayground.(extra.JacksonParser.parseJson|jmh4.TypeProfilePollution.testPredicates)"
+ */
+public class StartupRunner {
+
+    public enum CdsMode {
+        DEFAULT, APPCDS, AOT
+    }
+
+    public record Startup(String benchmark, CdsMode mode, String unit, double first, double uptimeMillis,
+                          double peak, double toPeak, double iterationsToPeak) {
+    }
+
+    private static final Path ARCHIVES = Path.of("target", "startup");
+
+    private final String include;
+    private int forks = 5;
+    private int iterations = 1000;
+    private int batchSize = 1;
+    private double tolerance = 0.1;
+    private Consumer<ChainedOptionsBuilder> options = options -> { };
+
+    public StartupRunner(String include) {
+        this.include = include;
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException, InterruptedException {
+        String include = null;
+        List<CdsMode> modes = List.of(CdsMode.values());
+        Map<String, String[]> params = new LinkedHashMap<>();
+        int forks = 5;
+        int iterations = 1000;
+        int batchSize = 1;
+        double tolerance = 0.1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-f" -> forks = Integer.parseInt(args[++i]);
+                case "-i" -> iterations = Integer.parseInt(args[++i]);
+                case "-bs" -> batchSize = Integer.parseInt(args[++i]);
+                case "-tolerance" -> tolerance = Double.parseDouble(args[++i]);
+                case "-modes" -> modes = Arrays.stream(args[++i].split(",")).map(m -> CdsMode.valueOf(m.toUpperCase())).toList();
+                case "-p" -> {
+                    String[] param = args[++i].split("=", 2);
+                    params.put(param[0], param[1].split(","));
+                }
+                default -> include = args[i];
+            }
+        }
+        if (include == null) {
+            System.err.println("Usage: StartupRunner [-f forks] [-i iterations] [-bs batchSize] [-tolerance 0.1] [-modes default,appcds,aot] [-p name=v1,v2] <benchmark regexp>");
+            System.exit(2);
+        }
+        StartupRunner runner = new StartupRunner(include);
+        runner.forks = forks;
+        runner.iterations = iterations;
+        runner.batchSize = batchSize;
+        runner.tolerance = tolerance;
+        runner.options = o -> params.forEach(o::param);
+        print(runner.run(modes));
+    }
+
+    public List<Startup> run(List<CdsMode> modes) throws RunnerException, IOException, InterruptedException {
+        List<Startup> startups = new ArrayList<>();
+        for (BenchmarkListEntry benchmark : Benchmarks.find(include)) {
+            for (CdsMode mode : modes) {
+                List<String> jvmArgs = prepare(benchmark, mode);
+                if (jvmArgs == null) {
+                    continue;
+                }
+                for (RunResult result : run(benchmark, jvmArgs, forks)) {
+                    startups.add(startup(result, mode));
+                }
+            }
+        }
+        return startups;
+    }
+
+    /**
+     * The JVM options of the given mode, running the training run which creates its archive: null if the mode
+     * isn't supported by this JVM
+     */
+    private List<String> prepare(BenchmarkListEntry benchmark, CdsMode mode) throws RunnerException, IOException, InterruptedException {
+        Path dir = ARCHIVES.resolve(benchmark.getUsername());
+        return switch (mode) {
+            case DEFAULT -> List.of();
+            case APPCDS -> {
+                Files.createDirectories(dir);
+                Path archive = dir.resolve("appcds.jsa");
+                Files.deleteIfExists(archive);
+                run(benchmark, List.of("-XX:ArchiveClassesAtExit=" + archive), 1);
+                yield created(archive, mode, List.of("-XX:SharedArchiveFile=" + archive));
+            }
+            case AOT -> {
+                if (!Benchmarks.jvmAccepts(List.of("-XX:AOTMode=off"))) {
+                    System.err.println("Skipping " + mode + ": the AOT cache requires JDK 24+, this is " + Runtime.version());
+                    yield null;
+                }
+                Files.createDirectories(dir);
+                Path configuration = dir.resolve("app.aotconf");
+                Path cache = dir.resolve("app.aot");
+                Files.deleteIfExists(configuration);
+                Files.deleteIfExists(cache);
+                run(benchmark, List.of("-XX:AOTMode=record", "-XX:AOTConfiguration=" + configuration), 1);
+                // the assembly phase doesn't run the application, but needs the same classpath of the forks
+                List<String> command = new ArrayList<>();
+                command.add(Benchmarks.java());
+                command.addAll(Arrays.asList(Benchmarks.jvmArgsAppend(benchmark, List.of())));
+                command.addAll(List.of("-XX:AOTMode=create", "-XX:AOTConfiguration=" + configuration, "-XX:AOTCache=" + cache,
+                        "-cp", System.getProperty("java.class.path")));
+                int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+                if (exitCode != 0) {
+                    throw new RunnerException("Creating the AOT cache " + cache + " from " + configuration + " exited with " + exitCode);
+                }
+                yield created(cache, mode, List.of("-XX:AOTCache=" + cache));
+            }
+        };
+    }
+
+    private static List<String> created(Path archive, CdsMode mode, List<String> jvmArgs) {
+        if (!Files.exists(archive)) {
+            System.err.println("Skipping " + mode + ": the training run didn't create " + archive);
+            return null;
+        }
+        return jvmArgs;
+    }
+
+    private Collection<RunResult> run(BenchmarkListEntry benchmark, List<String> jvmArgs, int forks) throws RunnerException {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .include(Benchmarks.exactly(benchmark))
+                .jvmArgsAppend(Benchmarks.jvmArgsAppend(benchmark, jvmArgs))
+                .mode(Mode.SingleShotTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .warmupIterations(0)
+                .measurementIterations(iterations)
+                .measurementBatchSize(batchSize)
+                .forks(forks)
+                .addProfiler(UptimeProfiler.class);
+        options.accept(builder);
+        return new Runner(builder.build()).run();
+    }
+
+    private Startup startup(RunResult result, CdsMode mode) {
+        int forks = 0;
+        double first = 0;
+        double peak = 0;
+        double toPeak = 0;
+        double iterationsToPeak = 0;
+        String unit = result.getPrimaryResult().getScoreUnit();
+        for (BenchmarkResult fork : result.getBenchmarkResults()) {
+            double[] scores = fork.getIterationResults().stream()
+                    .map(IterationResult::getPrimaryResult)
+                    .mapToDouble(Result::getScore)
+                    .toArray();
+            int window = Math.max(1, scores.length / 10);
+            double forkPeak = median(scores, scores.length - window, scores.length);
+            int reached = scores.length - window;
+            for (int i = 0; i + window <= scores.length; i++) {
+                if (median(scores, i, i + window) <= forkPeak * (1 + tolerance)) {
+                    reached = i;
+                    break;
+                }
+            }
+            forks++;
+            first += scores[0];
+            peak += forkPeak;
+            iterationsToPeak += reached;
+            toPeak += Arrays.stream(scores, 0, reached).sum();
+        }
+        Result uptime = result.getSecondaryResults().get(UptimeProfiler.UPTIME);
+        return new Startup(Benchmarks.label(result.getParams()), mode, unit, first / forks,
+                uptime == null ? Double.NaN : uptime.getScore(), peak / forks, toPeak / forks, iterationsToPeak / forks);
+    }
+
+    private static double median(double[] scores, int from, int to) {
+        double[] window = Arrays.copyOfRange(scores, from, to);
+        Arrays.sort(window);
+        return window[window.length / 2];
+    }
+
+    public static void print(List<Startup> startups) {
+        int width = Math.max("Benchmark".length(), startups.stream().mapToInt(s -> s.benchmark().length()).max().orElse(0));
+        System.out.println();
+        System.out.printf("%-" + width + "s  %-7s  %12s  %12s  %12s  %12s  %10s  %s%n",
+                "Benchmark", "Mode", "First", "Uptime ms", "Peak", "To peak", "Iterations", "Units");
+        for (Startup startup : startups) {
+            System.out.printf("%-" + width + "s  %-7s  %12.3f  %12.3f  %12.3f  %12.3f  %10.1f  %s%n",
+                    startup.benchmark(), startup.mode().name().toLowerCase(), startup.first(), startup.uptimeMillis(),
+                    startup.peak(), startup.toPeak(), startup.iterationsToPeak(), startup.unit());
+        }
+    }
+}
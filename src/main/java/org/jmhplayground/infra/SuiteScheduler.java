@@ -0,0 +1,375 @@
+package org.jmhplayground.infra;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+
+/**
+ * Runs a suite of benchmarks partitioning the cores available to this process into groups of the given size: each
+ * fork becomes a JMH run with -f 1 pinned with taskset to as many groups as it has threads to give a core to each
+ * (the JMH host and its forked JVM both inherit the affinity), and forks of different benchmarks run concurrently,
+ * each on groups of its own. The threads are the ones JMH would run, e.g. 8 for @Threads(8) and the sum of the
+ * @GroupThreads of a @Group benchmark, -t and -tg included. The forks are interleaved by benchmark, and two forks of
+ * the same benchmark never run at the same time.
+ * The benchmarks annotated with {@link WholeMachine}, or with more threads than the cores of all the groups, are
+ * never co-scheduled: they run alone, on all the cores, after the others. The cores left over by a last incomplete
+ * group are only used by those. The benchmarks with more threads than cores aren't run at all, and are reported as
+ * not scheduled.
+ * Linux only: taskset (util-linux) must be on the PATH.
+ *
+ * Each fork writes its JSON results and log in the output directory, in files named after their placement, which
+ * is also visible in the results as the -Dsuite.cpus system property in the jvmArgs, and placement.csv maps each
+ * fork to its cores, duration and exit code.
+ * Pinning only isolates the cores: caches shared by the groups (e.g. L3) and memory bandwidth still are shared, so
+ * choose groups aligned to the cache topology (see lscpu -e) for the benchmarks sensitive to them.
+ *
+ * Options: -cores n (per group, default 2), -f forks (default the one of the annotations), -o dir (default
+ * target/suite), -warmup file (the -wi and -w of each benchmark found by {@link AdaptiveWarmup}, unless given after
+ * --), and any option after -- is passed to each JMH run
+ *
+ * Run with
+ * java -cp target/benchmark.jar org.jmhplayground.infra.SuiteScheduler -cores 4 "org.jmhplayground.jmh[1-6].*" -- -wi 5 -i 5
+ * java -cp target/benchmark.jar org.jmhplayground.infra.SuiteScheduler -cores 4 -warmup target/adaptive-warmup.properties "org.jmhplayground.jmh[1-6].*"
+ */
+public class SuiteScheduler {
+
+    public record Fork(BenchmarkListEntry benchmark, int fork, boolean wholeMachine, int threads) {
+
+        String name() {
+            return benchmark.getUsername().replace("org.jmhplayground.", "") + "-fork" + fork;
+        }
+    }
+
+    public record Placement(Fork fork, String cpus, Path result, int exitCode, double seconds) {
+
+        boolean scheduled() {
+            return exitCode != NOT_SCHEDULED;
+        }
+    }
+
+    /**
+     * The exit code of the placements of the forks with more threads than cores, which aren't run
+     */
+    static final int NOT_SCHEDULED = -1;
+
+    /**
+     * The groups of cores not in use, and the benchmarks with a fork running: a fork takes as many groups as it needs
+     * for its threads, and never runs next to a fork of its own benchmark
+     */
+    private static final class Groups {
+        private final List<String> free;
+        private final Set<String> running = new HashSet<>();
+
+        Groups(List<String> free) {
+            this.free = new ArrayList<>(free);
+        }
+
+        synchronized List<String> take(Fork fork, int count) throws InterruptedException {
+            while (free.size() < count || running.contains(fork.benchmark().getUsername())) {
+                wait();
+            }
+            List<String> taken = new ArrayList<>(free.subList(0, count));
+            free.subList(0, count).clear();
+            running.add(fork.benchmark().getUsername());
+            return taken;
+        }
+
+        synchronized void release(Fork fork, List<String> taken) {
+            free.addAll(taken);
+            running.remove(fork.benchmark().getUsername());
+            notifyAll();
+        }
+    }
+
+    private final String include;
+    private int coresPerGroup = 2;
+    private Integer forks;
+    private Path output = Path.of("target", "suite");
+    private List<String> jmhArgs = List.of();
+    private final Properties warmup = new Properties();
+
+    public SuiteScheduler(String include) {
+        this.include = include;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String include = null;
+        List<String[]> options = new ArrayList<>();
+        List<String> jmhArgs = List.of();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--")) {
+                jmhArgs = Arrays.asList(args).subList(i + 1, args.length);
+                break;
+            }
+            if (args[i].startsWith("-")) {
+                options.add(new String[] { args[i], args[++i] });
+            } else {
+                include = args[i];
+            }
+        }
+        if (include == null) {
+            System.err.println("Usage: SuiteScheduler [-cores n] [-f forks] [-o dir] [-warmup file] <benchmark regexp> [-- jmh options]");
+            System.exit(2);
+        }
+        SuiteScheduler scheduler = new SuiteScheduler(include);
+        scheduler.jmhArgs = jmhArgs;
+        for (String[] option : options) {
+            switch (option[0]) {
+                case "-cores" -> scheduler.coresPerGroup = Integer.parseInt(option[1]);
+                case "-f" -> scheduler.forks = Integer.parseInt(option[1]);
+                case "-o" -> scheduler.output = Path.of(option[1]);
+                case "-warmup" -> {
+                    try (Reader reader = Files.newBufferedReader(Path.of(option[1]))) {
+                        scheduler.warmup.load(reader);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + option[0]);
+            }
+        }
+        List<Placement> placements = scheduler.run();
+        print(placements);
+        if (placements.stream().anyMatch(p -> p.exitCode() != 0)) {
+            System.exit(1);
+        }
+    }
+
+    public List<Placement> run() throws IOException, InterruptedException {
+        requireTaskset();
+        List<Integer> cpus = allowedCpus();
+        int groups = Math.max(1, cpus.size() / coresPerGroup);
+        List<String> freeGroups = new ArrayList<>();
+        for (int group = 0; group < groups; group++) {
+            int from = group * coresPerGroup;
+            freeGroups.add(cpuList(cpus.subList(from, Math.min(from + coresPerGroup, cpus.size()))));
+        }
+        String allCpus = cpuList(cpus);
+        System.out.println("# " + groups + " groups of " + Math.min(coresPerGroup, cpus.size()) + " cores out of " + allCpus);
+        int grouped = Math.min(groups * coresPerGroup, cpus.size());
+        if (grouped < cpus.size()) {
+            // only the benchmarks run alone on all the cores will use them
+            System.out.println("# cpus " + cpuList(cpus.subList(grouped, cpus.size())) + " left over: they don't fill a group of "
+                    + coresPerGroup + " cores");
+        }
+
+        List<Fork> shared = new ArrayList<>();
+        List<Fork> exclusive = new ArrayList<>();
+        List<Placement> placements = new ArrayList<>();
+        for (Fork fork : forks(cpus.size())) {
+            if (fork.threads() > cpus.size()) {
+                // squeezed on fewer cores its threads would measure the scheduler, not the benchmark
+                if (fork.fork() == 1) {
+                    System.out.println("# Not scheduling " + fork.benchmark().getUsername() + ": it runs " + fork.threads()
+                            + " threads, more than the " + cpus.size() + " cores available");
+                }
+                placements.add(new Placement(fork, "", null, NOT_SCHEDULED, 0));
+            } else if (fork.wholeMachine() || groupsFor(fork) > groups) {
+                if (!fork.wholeMachine() && fork.fork() == 1) {
+                    System.out.println("# " + fork.benchmark().getUsername() + " runs " + fork.threads()
+                            + " threads, more than the cores of the groups: it runs alone on all of them");
+                }
+                exclusive.add(fork);
+            } else {
+                shared.add(fork);
+            }
+        }
+        Files.createDirectories(output);
+        Groups free = new Groups(freeGroups);
+        ExecutorService executor = Executors.newFixedThreadPool(groups);
+        try {
+            List<Future<Placement>> running = new ArrayList<>();
+            for (Fork fork : shared) {
+                running.add(executor.submit(() -> {
+                    List<String> taken = free.take(fork, groupsFor(fork));
+                    try {
+                        return run(fork, String.join(",", taken));
+                    } finally {
+                        free.release(fork, taken);
+                    }
+                }));
+            }
+            for (Future<Placement> placement : running) {
+                placements.add(placement.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        // everything else is done: nothing to co-schedule with
+        for (Fork fork : exclusive) {
+            placements.add(run(fork, allCpus));
+        }
+        writeManifest(placements);
+        return placements;
+    }
+
+    /**
+     * The groups of coresPerGroup cores the fork needs, one thread per core
+     */
+    private int groupsFor(Fork fork) {
+        return (fork.threads() + coresPerGroup - 1) / coresPerGroup;
+    }
+
+    /**
+     * The forks to run, interleaved by benchmark: first fork of each benchmark, then the second one, and so on
+     */
+    private List<Fork> forks(int cpus) {
+        List<List<Fork>> byBenchmark = new ArrayList<>();
+        for (BenchmarkListEntry benchmark : Benchmarks.find(include)) {
+            boolean wholeMachine = isWholeMachine(benchmark);
+            int threads = threads(benchmark, cpus);
+            // the JMH default is 5 forks
+            int count = forks != null ? forks : benchmark.getForks().orElse(5);
+            byBenchmark.add(IntStream.rangeClosed(1, count).mapToObj(f -> new Fork(benchmark, f, wholeMachine, threads)).toList());
+        }
+        List<Fork> interleaved = new ArrayList<>();
+        int max = byBenchmark.stream().mapToInt(List::size).max().orElse(0);
+        for (int i = 0; i < max; i++) {
+            for (List<Fork> benchmarkForks : byBenchmark) {
+                if (i < benchmarkForks.size()) {
+                    interleaved.add(benchmarkForks.get(i));
+                }
+            }
+        }
+        return interleaved;
+    }
+
+    /**
+     * The threads JMH runs the benchmark with, as computed by its Runner: the -t and -tg options passed to the runs,
+     * or else the annotations, rounded up to a multiple of the threads of the @Group methods (1 for the others)
+     */
+    private int threads(BenchmarkListEntry benchmark, int cpus) {
+        String t = jmhOption("-t");
+        int threads = t != null ? (t.equals("max") ? Threads.MAX : Integer.parseInt(t)) : benchmark.getThreads().orElse(1);
+        if (threads == Threads.MAX) {
+            threads = cpus;
+        }
+        String tg = jmhOption("-tg");
+        int groupThreads = tg != null ? Arrays.stream(tg.split(",")).mapToInt(Integer::parseInt).sum()
+                : Arrays.stream(benchmark.getThreadGroups()).sum();
+        return (threads + groupThreads - 1) / groupThreads * groupThreads;
+    }
+
+    private String jmhOption(String name) {
+        int index = jmhArgs.indexOf(name);
+        return index >= 0 && index + 1 < jmhArgs.size() ? jmhArgs.get(index + 1) : null;
+    }
+
+    private static boolean isWholeMachine(BenchmarkListEntry benchmark) {
+        try {
+            return Class.forName(benchmark.getUserClassQName(), false, SuiteScheduler.class.getClassLoader())
+                    .isAnnotationPresent(WholeMachine.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fails before running anything if taskset (util-linux) isn't there, instead of with an exit code per fork
+     */
+    private static void requireTaskset() {
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                if (!dir.isEmpty() && Files.isExecutable(Path.of(dir, "taskset"))) {
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("taskset not found on the PATH (" + path + "): it is needed to pin the forks to their cores, "
+                + "install util-linux (e.g. apt install util-linux) or run the benchmarks with JMH directly");
+    }
+
+    private Placement run(Fork fork, String cpus) throws IOException, InterruptedException {
+        String name = fork.name() + "-cpus" + cpus.replace(',', '_');
+        Path result = output.resolve(name + ".json");
+        List<String> command = new ArrayList<>(List.of("taskset", "-c", cpus, Benchmarks.java(),
+                "-cp", System.getProperty("java.class.path"), "org.openjdk.jmh.Main", Benchmarks.exactly(fork.benchmark()),
+                "-f", "1", "-rf", "json", "-rff", result.toString(),
+                // prepended, so that the jvmArgsAppend of the annotation are still applied
+                "-jvmArgsPrepend", "-Dsuite.cpus=" + cpus));
+        for (String option : List.of("wi", "w")) {
+            String value = warmup.getProperty(fork.benchmark().getUsername() + "." + option);
+            if (value != null && jmhOption("-" + option) == null) {
+                command.addAll(List.of("-" + option, value));
+            }
+        }
+        command.addAll(jmhArgs);
+        System.out.println("# Running " + fork.name() + " on cpus " + cpus);
+        long start = System.nanoTime();
+        int exitCode = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(output.resolve(name + ".log").toFile())
+                .start()
+                .waitFor();
+        Placement placement = new Placement(fork, cpus, result, exitCode, (System.nanoTime() - start) / 1e9);
+        System.out.printf("# Done %s on cpus %s in %.1f s%s%n", fork.name(), cpus, placement.seconds(),
+                exitCode == 0 ? "" : ", failed with exit code " + exitCode);
+        return placement;
+    }
+
+    private void writeManifest(List<Placement> placements) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output.resolve("placement.csv")))) {
+            writer.println("benchmark,fork,wholeMachine,cpus,seconds,exitCode,result");
+            for (Placement placement : placements) {
+                writer.printf("%s,%d,%s,\"%s\",%.1f,%d,%s%n", placement.fork().benchmark().getUsername(), placement.fork().fork(),
+                        placement.fork().wholeMachine(), placement.cpus(), placement.seconds(), placement.exitCode(), placement.result());
+            }
+        }
+    }
+
+    /**
+     * The cpus this process can run on, according to its affinity mask
+     */
+    static List<Integer> allowedCpus() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    List<Integer> cpus = new ArrayList<>();
+                    for (String range : line.substring(line.indexOf(':') + 1).trim().split(",")) {
+                        String[] bounds = range.split("-");
+                        int from = Integer.parseInt(bounds[0]);
+                        int to = Integer.parseInt(bounds[bounds.length - 1]);
+                        IntStream.rangeClosed(from, to).forEach(cpus::add);
+                    }
+                    return cpus;
+                }
+            }
+        }
+        return IntStream.range(0, Runtime.getRuntime().availableProcessors()).boxed().toList();
+    }
+
+    private static String cpuList(List<Integer> cpus) {
+        return cpus.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    public static void print(List<Placement> placements) {
+        int width = Math.max("Benchmark".length(), placements.stream().mapToInt(p -> p.fork().name().length()).max().orElse(0));
+        System.out.println();
+        System.out.printf("%-" + width + "s  %-20s  %10s  %s%n", "Benchmark", "Cpus", "Seconds", "Result");
+        for (Placement placement : placements) {
+            System.out.printf("%-" + width + "s  %-20s  %10.1f  %s%n", placement.fork().name(), placement.cpus(), placement.seconds(),
+                    !placement.scheduled() ? "not scheduled: " + placement.fork().threads() + " threads"
+                            : placement.exitCode() == 0 ? placement.result() : "failed with exit code " + placement.exitCode());
+        }
+    }
+}
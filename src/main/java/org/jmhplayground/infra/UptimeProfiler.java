@@ -0,0 +1,45 @@
+package org.jmhplayground.infra;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Reports the JVM uptime at the end of the first iteration of each fork, used by {@link StartupRunner}
+ * to include the JVM boot and the class loading in the time to the first result
+ */
+public class UptimeProfiler implements InternalProfiler {
+
+    public static final String UPTIME = "startup.uptime";
+
+    private long uptime = -1;
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                       IterationResult result) {
+        if (uptime < 0) {
+            // the timestamp comes first: loading java.management for the start time isn't part of the startup
+            long now = System.currentTimeMillis();
+            uptime = now - ManagementFactory.getRuntimeMXBean().getStartTime();
+        }
+        // reported on every iteration, as JMH averages the iterations without a result as 0
+        return List.of(new ScalarResult(UPTIME, uptime, "ms", AggregationPolicy.AVG));
+    }
+
+    @Override
+    public String getDescription() {
+        return "JVM uptime at the end of the first iteration";
+    }
+}
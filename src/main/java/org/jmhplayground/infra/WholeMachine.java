@@ -0,0 +1,15 @@
+package org.jmhplayground.infra;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the benchmarks whose results depend on the whole machine, e.g. because they scale the number of threads
+ * over the available cores or create noise on purpose: {@link SuiteScheduler} runs them alone, on all the cores.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface WholeMachine {
+}
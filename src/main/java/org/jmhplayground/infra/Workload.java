@@ -0,0 +1,21 @@
+package org.jmhplayground.infra;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the int @Param of the benchmark which is the size of the work of each op, e.g. the iterations of a loop, so
+ * that the cost per op is expected to grow linearly with it: {@link DeadCodeChecker} checks only the benchmarks
+ * declaring it, as the other int params (a call depth, a percentage, a number of threads...) aren't workloads.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Workload {
+
+    /**
+     * The name of the param
+     */
+    String value();
+}
@@ -2,6 +2,7 @@ package org.jmhplayground.jmh1;
 
 import java.util.concurrent.TimeUnit;
 
+import org.jmhplayground.infra.Workload;
 import org.openjdk.jmh.annotations.*;
 
 @State(Scope.Benchmark)
@@ -10,6 +11,7 @@ import org.openjdk.jmh.annotations.*;
 @Measurement(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
 @OutputTimeUnit(TimeUnit.NANOSECONDS)
 @Fork(2)
+@Workload("x")
 public class DeadCodeElimination2 {
 
     @Param({"1000", "100000"})
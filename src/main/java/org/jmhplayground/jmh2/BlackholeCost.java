@@ -0,0 +1,80 @@
+package org.jmhplayground.jmh2;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the per-op cost of the benchmark infrastructure: the empty benchmark loop (baseline) and the cost of
+ * sinking each kind of value, both implicitly (returning it) and explicitly (Blackhole::consume).
+ * Subtracting the baseline from the other scores gives the cost of a single consume for the blackhole mode in use.
+ *
+ * The blackhole mode is selected by the JMH host JVM, see {@link BlackholeTaxonomy}: these benchmarks are meant to
+ * be run once per mode, each one by a host of its own, by org.jmhplayground.infra.BlackholeCalibration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 10, time = 400, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+public class BlackholeCost {
+
+    private int intValue = 42;
+    private long longValue = 42L;
+    private Object objectValue = new Object();
+    private int[] arrayValue = new int[16];
+
+    @Benchmark
+    public void baseline() {
+    }
+
+    @Benchmark
+    public int returnInt() {
+        return intValue;
+    }
+
+    @Benchmark
+    public long returnLong() {
+        return longValue;
+    }
+
+    @Benchmark
+    public Object returnObject() {
+        return objectValue;
+    }
+
+    @Benchmark
+    public int[] returnArray() {
+        return arrayValue;
+    }
+
+    @Benchmark
+    public void consumeInt(Blackhole bh) {
+        bh.consume(intValue);
+    }
+
+    @Benchmark
+    public void consumeLong(Blackhole bh) {
+        bh.consume(longValue);
+    }
+
+    @Benchmark
+    public void consumeObject(Blackhole bh) {
+        bh.consume(objectValue);
+    }
+
+    @Benchmark
+    public void consumeArray(Blackhole bh) {
+        bh.consume(arrayValue);
+    }
+}
@@ -21,6 +21,9 @@ import org.openjdk.jmh.annotations.Warmup;
  *
  * Run with
  * -prof "async:output=flamegraph;dir=/tmp;libPath=/home/mario/software/async-profiler-3.0-linux-x64/lib/libasyncProfiler.so"
+ *
+ * To see how callDepth reacts to other inlining budgets (or JITs) use org.jmhplayground.infra.JvmFlagMatrix,
+ * which overrides -XX:MaxInlineLevel=4 below (see scripts/run5c.sh)
  */
 @State(Scope.Benchmark)
 @BenchmarkMode(Mode.AverageTime)
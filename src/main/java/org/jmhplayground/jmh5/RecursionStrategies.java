@@ -0,0 +1,183 @@
+package org.jmhplayground.jmh5;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RecursiveInlining shows that the JIT can inline a recursive call only up to a point: this evaluates a
+ * (left deep) expression tree, i.e. what a tree-walking interpreter does, of increasing depth with different
+ * strategies to see which one scales:
+ * 1. direct recursion: inlined only up to MaxRecursiveInlineLevel (1 by default), then one frame per node
+ * 2. mutual (indirect) recursion: evalNode -> evalAdd -> evalNode, inlined up to MaxInlineLevel
+ * 3. trampoline: continuation passing style bouncing on a loop, constant stack but allocating per node
+ * 4. explicit stack: an iterative post-order visit using arrays as operand and node stacks, allocated once in the
+ *    setup: allocating and zeroing them per op would cost more than the visit itself at depth=10000
+ * 5. unrolled: the recursion manually unrolled by 4 levels, so it needs 1/4 of the frames
+ *
+ * Direct and mutual recursion need a bigger stack for depth=10000 while running in the interpreter, hence -Xss.
+ *
+ * Run with
+ * -prof "async:output=flamegraph;dir=/tmp;libPath=/home/mario/software/async-profiler-3.0-linux-x64/lib/libasyncProfiler.so;rawCommand=cstack=vm"
+ * -jvmArgsAppend "-Xss16m -XX:+UnlockDiagnosticVMOptions -XX:+PrintInlining" to check the inlining decisions
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 10, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 100, timeUnit = TimeUnit.MILLISECONDS)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xss16m")
+public class RecursionStrategies {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    int depth;
+
+    private sealed interface Node permits Add, Const { }
+
+    private record Add(Node left, Node right) implements Node { }
+
+    private record Const(long value) implements Node { }
+
+    private Node expression;
+    private Node[] nodes;
+    private boolean[] visited;
+    private long[] values;
+
+    @Setup
+    public void setup() {
+        // (((1 + 1) + 1) + 1) ... with depth additions
+        Node node = new Const(1);
+        for (int i = 0; i < depth; i++) {
+            node = new Add(node, new Const(1));
+        }
+        expression = node;
+        nodes = new Node[2 * depth + 2];
+        visited = new boolean[2 * depth + 2];
+        values = new long[depth + 2];
+        long expected = depth + 1;
+        if (direct() != expected || mutual() != expected || trampoline() != expected
+                || explicitStack() != expected || unrolled() != expected) {
+            throw new IllegalStateException("All the strategies must evaluate to " + expected);
+        }
+    }
+
+    @Benchmark
+    public long direct() {
+        return evalDirect(expression);
+    }
+
+    @Benchmark
+    public long mutual() {
+        return evalNode(expression);
+    }
+
+    @Benchmark
+    public long trampoline() {
+        Step step = evalCps(expression, Done::new);
+        while (step instanceof More more) {
+            step = more.next().get();
+        }
+        return ((Done) step).value();
+    }
+
+    @Benchmark
+    public long explicitStack() {
+        // each pending Add stays on the stack, below its right child, until both its children have been evaluated:
+        // its visited flag is cleared when it's popped again, so the stacks are ready for the next op at the end
+        var nodes = this.nodes;
+        var visited = this.visited;
+        var values = this.values;
+        int nodesTop = 0;
+        int valuesTop = 0;
+        nodes[nodesTop++] = expression;
+        while (nodesTop > 0) {
+            Node node = nodes[--nodesTop];
+            if (node instanceof Const c) {
+                values[valuesTop++] = c.value();
+            } else if (visited[nodesTop]) {
+                visited[nodesTop] = false;
+                long right = values[--valuesTop];
+                long left = values[--valuesTop];
+                values[valuesTop++] = left + right;
+            } else {
+                Add add = (Add) node;
+                visited[nodesTop] = true;
+                nodesTop++;
+                nodes[nodesTop++] = add.right();
+                nodes[nodesTop++] = add.left();
+            }
+        }
+        return values[0];
+    }
+
+    @Benchmark
+    public long unrolled() {
+        return evalUnrolled(expression);
+    }
+
+    private static long evalDirect(Node node) {
+        if (node instanceof Add add) {
+            return evalDirect(add.left()) + evalDirect(add.right());
+        }
+        return ((Const) node).value();
+    }
+
+    private static long evalNode(Node node) {
+        if (node instanceof Add add) {
+            return evalAdd(add);
+        }
+        return ((Const) node).value();
+    }
+
+    private static long evalAdd(Add add) {
+        return evalNode(add.left()) + evalNode(add.right());
+    }
+
+    private static long evalUnrolled(Node node) {
+        if (!(node instanceof Add a1)) {
+            return ((Const) node).value();
+        }
+        if (!(a1.left() instanceof Add a2)) {
+            return evalUnrolled(a1.left()) + evalUnrolled(a1.right());
+        }
+        if (!(a2.left() instanceof Add a3)) {
+            return evalUnrolled(a2.left()) + evalUnrolled(a2.right()) + evalUnrolled(a1.right());
+        }
+        if (!(a3.left() instanceof Add a4)) {
+            return evalUnrolled(a3.left()) + evalUnrolled(a3.right()) + evalUnrolled(a2.right()) + evalUnrolled(a1.right());
+        }
+        return evalUnrolled(a4.left()) + evalUnrolled(a4.right())
+                + evalUnrolled(a3.right()) + evalUnrolled(a2.right()) + evalUnrolled(a1.right());
+    }
+
+    private sealed interface Step permits Done, More { }
+
+    private record Done(long value) implements Step { }
+
+    private record More(Supplier<Step> next) implements Step { }
+
+    /**
+     * Every continuation is applied through a bounce, so the stack never grows whatever the shape of the tree
+     */
+    private static Step evalCps(Node node, LongFunction<Step> k) {
+        if (node instanceof Const c) {
+            return new More(() -> k.apply(c.value()));
+        }
+        Add add = (Add) node;
+        return new More(() -> evalCps(add.left(),
+                left -> new More(() -> evalCps(add.right(),
+                        right -> new More(() -> k.apply(left + right))))));
+    }
+}
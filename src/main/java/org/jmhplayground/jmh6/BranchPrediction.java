@@ -42,35 +42,19 @@ public class BranchPrediction {
     private boolean same;
 
     private String[] inputs;
-    // keep it as small as possible to have more and more of them in the L1 cache
     private byte[] inputsSequence;
 
     private long nextSequence;
 
     @Setup
     public void setup() {
-        // let's use a power of 2 here for convenience
-        int sequenceSize = 128 * 1024;
-        if (Integer.bitCount(sequenceSize) != 1) {
-            throw new IllegalArgumentException("sequenceSize must be a power of 2");
-        }
-        inputsSequence = new byte[sequenceSize];
         if (same) {
             inputs = IMMUTABLE_PSEUDO_HEADERS.toArray(new String[0]);
         } else {
             inputs = IMMUTABLE_PSEUDO_HEADERS.stream().map(String::toCharArray).map(String::new).toArray(count -> new String[count]);
         }
-        if (shuffle) {
-            var rnd = new Random(42);
-            for (int i = 0; i < sequenceSize; i++) {
-                inputsSequence[i] = (byte) rnd.nextInt(0, IMMUTABLE_PSEUDO_HEADERS.size());
-            }
-        } else {
-            // this should be fairly predictable for the CPU :P
-            for (int i = 0; i < sequenceSize; i++) {
-                inputsSequence[i] = (byte) (i % IMMUTABLE_PSEUDO_HEADERS.size());
-            }
-        }
+        // this should be fairly predictable for the CPU when not shuffled :P
+        inputsSequence = new InputSequence(128 * 1024, inputs.length, shuffle ? 0 : 100, new Random(42)).toArray();
     }
 
 
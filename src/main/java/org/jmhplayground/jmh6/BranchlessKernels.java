@@ -0,0 +1,228 @@
+package org.jmhplayground.jmh6;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Data dependent kernels in a branchy and a branchless (arithmetic masks) form, over inputs whose branch outcomes
+ * follow an {@link InputSequence} of the given predictability: each value is below THRESHOLD when the sequence
+ * says 0 and above it when it says 1, while the binary search keys are 16 values in the sorted array.
+ *
+ * With predictable inputs the branchy forms are usually faster (a correctly predicted branch is almost free and
+ * does less work), while branch-misses make them pay ~15-20 cycles every miss: check where they cross.
+ * Note that C2 can turn a branch into a conditional move by itself when the profile says it isn't biased
+ * (see -XX:ConditionalMoveLimit), so check the assembly too before drawing any conclusion.
+ *
+ * Run with
+ * -prof perfnorm to compare the branch-misses/op, -prof "perfasm:intelSyntax=true" to look for cmov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2)
+public class BranchlessKernels {
+
+    private static final int SIZE = 4096;
+
+    private static final int THRESHOLD = 128;
+
+    private static final int KEYS = 16;
+
+    @Param({"0", "25", "50", "75", "90", "100"})
+    private int predictability;
+
+    private int[] values;
+    private int[] out;
+    private int[] sorted;
+    private int[] keys;
+
+    @Setup
+    public void setup() {
+        var rnd = new Random(42);
+        var valuesSequence = new InputSequence(SIZE, 2, predictability, rnd);
+        values = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = valuesSequence.get(i) == 0 ? rnd.nextInt(0, THRESHOLD) : rnd.nextInt(THRESHOLD, 2 * THRESHOLD);
+        }
+        out = new int[SIZE];
+        sorted = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            sorted[i] = 2 * i;
+        }
+        int[] candidates = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            candidates[i] = sorted[(2 * i + 1) * SIZE / (2 * KEYS)] + rnd.nextInt(0, 2);
+        }
+        var keysSequence = new InputSequence(SIZE / 4, KEYS, predictability, rnd);
+        keys = new int[keysSequence.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = candidates[keysSequence.get(i)];
+        }
+        if (countBranchy() != countBranchless() || filterBranchy() != filterBranchless()
+                || minMaxBranchy() != minMaxBranchless() || binarySearchBranchy() != binarySearchBranchless()
+                || partitionBranchy() != partitionBranchless()) {
+            throw new IllegalStateException("Branchy and branchless kernels must compute the same results");
+        }
+    }
+
+    @Benchmark
+    public int countBranchy() {
+        int count = 0;
+        for (int value : values) {
+            if (value < THRESHOLD) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int countBranchless() {
+        int count = 0;
+        for (int value : values) {
+            // the sign bit of value - THRESHOLD is 1 iff value < THRESHOLD
+            count += (value - THRESHOLD) >>> 31;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int filterBranchy() {
+        var out = this.out;
+        int n = 0;
+        for (int value : values) {
+            if (value < THRESHOLD) {
+                out[n++] = value;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int filterBranchless() {
+        var out = this.out;
+        int n = 0;
+        for (int value : values) {
+            // always write, but move forward only if selected
+            out[n] = value;
+            n += (value - THRESHOLD) >>> 31;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public long minMaxBranchy() {
+        long sum = 0;
+        for (int value : values) {
+            int min;
+            int max;
+            if (value < THRESHOLD) {
+                min = value;
+                max = THRESHOLD;
+            } else {
+                min = THRESHOLD;
+                max = value;
+            }
+            sum += min * 3L + max;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long minMaxBranchless() {
+        long sum = 0;
+        for (int value : values) {
+            int diff = value - THRESHOLD;
+            // all ones iff value < THRESHOLD
+            int mask = diff >> 31;
+            int min = THRESHOLD + (diff & mask);
+            int max = value - (diff & mask);
+            sum += min * 3L + max;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int binarySearchBranchy() {
+        var sorted = this.sorted;
+        int sum = 0;
+        for (int key : keys) {
+            // lower bound: the first index whose value is >= key
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            sum += low;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int binarySearchBranchless() {
+        var sorted = this.sorted;
+        int sum = 0;
+        for (int key : keys) {
+            // the loop runs log2(length) times whatever the key: the only branch left is always predictable
+            int base = 0;
+            int length = sorted.length;
+            while (length > 1) {
+                int half = length >>> 1;
+                base += half & ((sorted[base + half - 1] - key) >> 31);
+                length -= half;
+            }
+            sum += base + ((sorted[base] - key) >>> 31);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int partitionBranchy() {
+        var out = this.out;
+        int low = 0;
+        int high = out.length - 1;
+        for (int value : values) {
+            if (value < THRESHOLD) {
+                out[low++] = value;
+            } else {
+                out[high--] = value;
+            }
+        }
+        return low;
+    }
+
+    @Benchmark
+    public int partitionBranchless() {
+        var out = this.out;
+        int low = 0;
+        int high = out.length - 1;
+        for (int value : values) {
+            // write on both sides: the wrong one is overwritten later, and they meet on the last value
+            out[low] = value;
+            out[high] = value;
+            int less = (value - THRESHOLD) >>> 31;
+            low += less;
+            high -= 1 - less;
+        }
+        return low;
+    }
+}
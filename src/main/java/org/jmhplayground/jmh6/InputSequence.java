@@ -0,0 +1,62 @@
+package org.jmhplayground.jmh6;
+
+import java.util.Random;
+
+/**
+ * A cyclic sequence of indexes in [0, distinct) to drive data dependent branches: with predictability=100 it
+ * repeats 0, 1, ..., distinct - 1 (fairly predictable for the CPU), with predictability=0 each index is random and
+ * in between each position follows the pattern with the given probability (percentage).
+ * A random position can still match the pattern, so the expected misprediction rate is about
+ * (100 - predictability)% * (distinct - 1) / distinct.
+ */
+public final class InputSequence {
+
+    // keep it as small as possible to have more and more of them in the L1 cache
+    private final byte[] sequence;
+
+    private long next;
+
+    public InputSequence(int size, int distinct, int predictability, Random random) {
+        // let's use a power of 2 here for convenience
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of 2");
+        }
+        if (distinct < 1 || distinct > Byte.MAX_VALUE + 1) {
+            throw new IllegalArgumentException("distinct must be in [1, 128]");
+        }
+        if (predictability < 0 || predictability > 100) {
+            throw new IllegalArgumentException("predictability must be a percentage");
+        }
+        sequence = new byte[size];
+        for (int i = 0; i < size; i++) {
+            // no extra random draws for the fully (un)predictable cases, so the same seed gives the same sequence
+            boolean predictable = predictability == 100 || (predictability > 0 && random.nextInt(100) < predictability);
+            sequence[i] = (byte) (predictable ? i % distinct : random.nextInt(0, distinct));
+        }
+    }
+
+    /**
+     * The next index, wrapping around at the end of the sequence
+     */
+    public int next() {
+        var sequence = this.sequence;
+        int index = sequence[(int) (next & (sequence.length - 1))];
+        next++;
+        return index;
+    }
+
+    public int get(int position) {
+        return sequence[position];
+    }
+
+    public int size() {
+        return sequence.length;
+    }
+
+    /**
+     * A copy of the whole sequence, for the benchmarks walking it inline on their hot path
+     */
+    public byte[] toArray() {
+        return sequence.clone();
+    }
+}